@@ -0,0 +1,99 @@
+package study.querydsl.benchmark;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import study.querydsl.QuerydslApplication;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.repository.MemberBulkLoader;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.MemberSearchQueries;
+import study.querydsl.repository.MemberSeedProperties;
+import study.querydsl.repository.MemberSnapshot;
+import study.querydsl.repository.MemberTestRepository;
+import study.querydsl.repository.support.CountCache;
+import study.querydsl.repository.support.MemberSearchCache;
+import study.querydsl.repository.support.MemberTeamChangedEvent;
+
+/**
+ * 인메모리 H2 에 memberCount 만큼 회원을 넣고 애플리케이션 컨텍스트를 띄운다.
+ * 팀은 100개(team0~team99), 나이는 0~99 로 고르게 분포한다.
+ */
+@State(Scope.Benchmark)
+public class MemberBenchmarkState {
+
+    static final int TEAM_COUNT = 100;
+    static final int BATCH_SIZE = 10_000;
+
+    @Param({"10000", "100000", "1000000"})
+    public int memberCount;
+
+    public ConfigurableApplicationContext context;
+
+    public MemberJpaRepository memberJpaRepository;
+    public MemberRepository memberRepository;
+    public MemberTestRepository memberTestRepository;
+    public JPAQueryFactory queryFactory;
+    public MemberSearchQueries searchQueries;
+    public MemberSnapshot memberSnapshot;
+    public CountCache countCache;
+    public MemberSearchCache searchCache;
+
+    public MemberSearchCondition condition;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(QuerydslApplication.class)
+                .run("--spring.profiles.active=bench",
+                        "--spring.main.web-application-type=none",
+                        "--spring.datasource.url=jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1",
+                        "--logging.level.org.hibernate.SQL=warn",
+                        "--decorator.datasource.p6spy.enable-logging=false");
+
+        MemberSeedProperties seed = new MemberSeedProperties();
+        seed.setMemberCount(memberCount);
+        seed.setTeamCount(TEAM_COUNT);
+        seed.setAgeDistribution(MemberSeedProperties.AgeDistribution.UNIFORM);
+        seed.setBatchSize(BATCH_SIZE);
+        context.getBean(MemberBulkLoader.class).load(seed);
+
+        memberJpaRepository = context.getBean(MemberJpaRepository.class);
+        memberRepository = context.getBean(MemberRepository.class);
+        memberTestRepository = context.getBean(MemberTestRepository.class);
+        queryFactory = context.getBean(JPAQueryFactory.class);
+        searchQueries = context.getBean(MemberSearchQueries.class);
+        countCache = context.getBean(CountCache.class);
+        searchCache = context.getBean(MemberSearchCache.class);
+        //비활성 상태에서도 직접 적재하면 검색할 수 있다. (repository 경로는 DB 그대로)
+        memberSnapshot = context.getBean(MemberSnapshot.class);
+        memberSnapshot.reload();
+
+        //결과가 전체의 약 1/1000 이 되는 조건
+        condition = new MemberSearchCondition();
+        condition.setTeamName("team7");
+        condition.setAgeGoe(20);
+        condition.setAgeLoe(29);
+    }
+
+    /**
+     * 검색 결과, count 캐시를 비운다. 캐시 적중이 아니라 쿼리 경로를 재려면 호출마다 부른다.
+     */
+    public void clearCaches() {
+        MemberTeamChangedEvent committed = new MemberTeamChangedEvent(Member.class, null, true);
+        countCache.invalidate(committed);
+        searchCache.invalidate(committed);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+}
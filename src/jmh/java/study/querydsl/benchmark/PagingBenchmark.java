@@ -0,0 +1,42 @@
+package study.querydsl.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import study.querydsl.dto.MemberTeamDto;
+
+/**
+ * fetchResults(searchPageSimple) vs content/count 분리(searchPageComplex) vs Querydsl4RepositorySupport(applyPagination1)
+ * 캐시 적중이 아니라 페이징 방식을 비교하도록 호출마다 CountCache, MemberSearchCache 를 비운다.
+ */
+@State(Scope.Benchmark)
+public class PagingBenchmark {
+
+    @Param({"0", "100"})
+    public int page;
+
+    @Setup(Level.Invocation)
+    public void clearCaches(MemberBenchmarkState state) {
+        state.clearCaches();
+    }
+
+    @Benchmark
+    public Page<MemberTeamDto> searchPageSimple(MemberBenchmarkState state) {
+        return state.memberRepository.searchPageSimple(state.condition, PageRequest.of(page, 10));
+    }
+
+    @Benchmark
+    public Page<MemberTeamDto> searchPageComplex(MemberBenchmarkState state) {
+        return state.memberRepository.searchPageComplex(state.condition, PageRequest.of(page, 10));
+    }
+
+    @Benchmark
+    public Page<MemberTeamDto> applyPagination1(MemberBenchmarkState state) {
+        return state.memberTestRepository.applyPagination1(state.condition, PageRequest.of(page, 10));
+    }
+}
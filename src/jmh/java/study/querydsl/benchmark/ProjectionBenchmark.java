@@ -0,0 +1,54 @@
+package study.querydsl.benchmark;
+
+import com.querydsl.core.types.Projections;
+import org.openjdk.jmh.annotations.Benchmark;
+import study.querydsl.dto.MemberDto;
+import study.querydsl.dto.QMemberDto;
+
+import java.util.List;
+
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * BasicTest 의 DTO 조회 방식 비교 (setter, field, 생성자, @QueryProjection)
+ */
+public class ProjectionBenchmark {
+
+    private static final int LIMIT = 1000;
+
+    @Benchmark
+    public List<MemberDto> bean(MemberBenchmarkState state) {
+        return state.queryFactory
+                .select(Projections.bean(MemberDto.class, member.username, member.age))
+                .from(member)
+                .limit(LIMIT)
+                .fetch();
+    }
+
+    @Benchmark
+    public List<MemberDto> fields(MemberBenchmarkState state) {
+        return state.queryFactory
+                .select(Projections.fields(MemberDto.class, member.username, member.age))
+                .from(member)
+                .limit(LIMIT)
+                .fetch();
+    }
+
+    @Benchmark
+    public List<MemberDto> constructor(MemberBenchmarkState state) {
+        return state.queryFactory
+                .select(Projections.constructor(MemberDto.class, member.username, member.age))
+                .from(member)
+                .limit(LIMIT)
+                .fetch();
+    }
+
+    @Benchmark
+    public List<MemberDto> queryProjection(MemberBenchmarkState state) {
+        return state.queryFactory
+                .select(new QMemberDto(member.username, member.age))
+                .from(member)
+                .limit(LIMIT)
+                .fetch();
+    }
+}
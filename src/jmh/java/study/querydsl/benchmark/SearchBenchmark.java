@@ -0,0 +1,33 @@
+package study.querydsl.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.util.List;
+
+/**
+ * MemberSearchQueries 검색(search) vs 같은 조건을 정렬 없이 바로 실행(searchByBuilder)
+ * search 는 MemberSearchCache 를 거치므로 호출마다 캐시를 비운다.
+ */
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+    @Setup(Level.Invocation)
+    public void clearCaches(MemberBenchmarkState state) {
+        state.clearCaches();
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> search(MemberBenchmarkState state) {
+        return state.memberJpaRepository.search(state.condition);
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> searchByBuilder(MemberBenchmarkState state) {
+        return state.memberJpaRepository.searchByBuilder(state.condition);
+    }
+}
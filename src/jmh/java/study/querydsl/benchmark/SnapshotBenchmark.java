@@ -0,0 +1,37 @@
+package study.querydsl.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.util.List;
+
+/**
+ * DB 검색 쿼리(queries) vs 메모리 컬럼 스냅샷(snapshot)
+ */
+public class SnapshotBenchmark {
+
+    private static final PageRequest PAGE = PageRequest.of(0, 20);
+
+    @Benchmark
+    public List<MemberTeamDto> queries(MemberBenchmarkState state) {
+        return state.searchQueries.search(state.condition);
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> snapshot(MemberBenchmarkState state) {
+        return state.memberSnapshot.search(state.condition);
+    }
+
+    @Benchmark
+    public long queriesPage(MemberBenchmarkState state) {
+        return state.searchQueries.search(state.condition, PAGE.getOffset(), PAGE.getPageSize()).size()
+                + state.searchQueries.count(state.condition);
+    }
+
+    @Benchmark
+    public Page<MemberTeamDto> snapshotPage(MemberBenchmarkState state) {
+        return state.memberSnapshot.searchPage(state.condition, PAGE);
+    }
+}
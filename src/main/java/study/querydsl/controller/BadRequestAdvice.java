@@ -0,0 +1,28 @@
+package study.querydsl.controller;
+
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * 리포지토리가 잘못된 요청 값(페이지 크기, 커서 등)으로 던진 IllegalArgumentException 은 400 으로 응답한다.
+ * 리포지토리(@Repository) 를 거치면 InvalidDataAccessApiUsageException 으로 번역되어 오므로 원인을 꺼낸다.
+ */
+@RestControllerAdvice
+public class BadRequestAdvice {
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+    }
+
+    @ExceptionHandler(InvalidDataAccessApiUsageException.class)
+    public ResponseEntity<String> invalidUsage(InvalidDataAccessApiUsageException e) {
+        if (e.getCause() instanceof IllegalArgumentException) {
+            return badRequest((IllegalArgumentException) e.getCause());
+        }
+        throw e;
+    }
+}
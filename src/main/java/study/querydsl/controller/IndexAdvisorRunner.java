@@ -0,0 +1,87 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.MemberSortKey;
+import study.querydsl.repository.MemberTestRepository;
+import study.querydsl.repository.support.IndexAdvisor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 기동 후 검색 메서드를 대표 조건으로 한 번씩 실행하고 실행 계획을 로그로 남긴다. (querydsl.index-advisor.enabled=true)
+ * 조건이 있는데 전체 스캔하는 쿼리는 WARN 으로 실행 계획과 함께 출력한다.
+ * 검색 캐시, 스냅샷이 응답하면 SQL 이 실행되지 않으므로 끄고 실행한다.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "querydsl.index-advisor.enabled", havingValue = "true")
+public class IndexAdvisorRunner implements ApplicationRunner {
+
+    private static final PageRequest PAGE = PageRequest.of(0, 20);
+
+    private final IndexAdvisor indexAdvisor;
+    private final MemberRepository memberRepository;
+    private final MemberJpaRepository memberJpaRepository;
+    private final MemberTestRepository memberTestRepository;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        List<IndexAdvisor.Report> reports = new ArrayList<>();
+        for (Map.Entry<String, MemberSearchCondition> entry : conditions().entrySet()) {
+            String name = entry.getKey();
+            MemberSearchCondition condition = entry.getValue();
+
+            reports.addAll(indexAdvisor.explain("MemberRepository.search " + name, () -> memberRepository.search(condition)));
+            reports.addAll(indexAdvisor.explain("MemberRepository.searchPageSimple " + name, () -> memberRepository.searchPageSimple(condition, PAGE)));
+            reports.addAll(indexAdvisor.explain("MemberRepository.searchPageComplex " + name, () -> memberRepository.searchPageComplex(condition, PAGE)));
+            reports.addAll(indexAdvisor.explain("MemberRepository.searchByCursor " + name, () -> memberRepository.searchByCursor(condition, MemberSortKey.ID, null, 20)));
+            reports.addAll(indexAdvisor.explain("MemberJpaRepository.search " + name, () -> memberJpaRepository.search(condition)));
+            reports.addAll(indexAdvisor.explain("MemberJpaRepository.searchByBuilder " + name, () -> memberJpaRepository.searchByBuilder(condition)));
+            reports.addAll(indexAdvisor.explain("MemberJpaRepository.searchMember " + name, () -> memberJpaRepository.searchMember(condition)));
+            reports.addAll(indexAdvisor.explain("MemberTestRepository.applyPagination1 " + name, () -> memberTestRepository.applyPagination1(condition, PAGE)));
+            reports.addAll(indexAdvisor.explain("MemberTestRepository.applyPagination2 " + name, () -> memberTestRepository.applyPagination2(condition, PAGE)));
+            reports.addAll(indexAdvisor.explain("MemberTestRepository.searchPageByApplyPage " + name, () -> memberTestRepository.searchPageByApplyPage(condition, PAGE)));
+        }
+
+        long scans = reports.stream().filter(IndexAdvisor.Report::hasScan).count();
+        for (IndexAdvisor.Report report : reports) {
+            if (report.hasScan()) {
+                log.warn("{}\n{}", report, report.getPlan());
+            } else {
+                log.info("{}", report);
+            }
+        }
+        log.info("index advisor: {} statements, {} with full scans", reports.size(), scans);
+    }
+
+    private Map<String, MemberSearchCondition> conditions() {
+        Map<String, MemberSearchCondition> conditions = new LinkedHashMap<>();
+        conditions.put("[username]", condition("member1", null, null, null));
+        conditions.put("[teamName]", condition(null, "teamA", null, null));
+        conditions.put("[teamName, age]", condition(null, "teamA", 10, 30));
+        conditions.put("[age]", condition(null, null, 10, 10));
+        return conditions;
+    }
+
+    private static MemberSearchCondition condition(String username, String teamName, Integer ageGoe, Integer ageLoe) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername(username);
+        condition.setTeamName(teamName);
+        condition.setAgeGoe(ageGoe);
+        condition.setAgeLoe(ageLoe);
+        return condition;
+    }
+}
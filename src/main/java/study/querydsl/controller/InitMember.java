@@ -3,13 +3,10 @@ package study.querydsl.controller;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
-import study.querydsl.entity.Member;
-import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberBulkLoader;
+import study.querydsl.repository.MemberSeedProperties;
 
 import javax.annotation.PostConstruct;
-import javax.persistence.EntityManager;
-import javax.persistence.PersistenceContext;
 
 @Profile("local")
 @Component
@@ -17,33 +14,12 @@ import javax.persistence.PersistenceContext;
 public class InitMember {
 
 
-    private final InitMemberService initMemberService;
+    private final MemberBulkLoader memberBulkLoader;
+
+    private final MemberSeedProperties memberSeedProperties;
 
     @PostConstruct
     public void init(){
-        initMemberService.init();
-    }
-
-    @Component
-    static class InitMemberService{
-
-        @PersistenceContext
-        private EntityManager em;
-
-
-        @Transactional
-        public void init(){
-            Team teamA = new Team("teamA");
-            Team teamB = new Team("teamB");
-
-            em.persist(teamA);
-            em.persist(teamB);
-
-            for (int i = 0; i < 100; i++) {
-
-                Team selectedTeam = i % 2 == 0 ? teamA : teamB;
-                em.persist(new Member("member" + i, i , selectedTeam));
-            }
-        }
+        memberBulkLoader.load(memberSeedProperties);
     }
 }
@@ -0,0 +1,62 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.MemberTestRepository;
+import study.querydsl.repository.support.AsyncQueryExecutor;
+
+import java.util.List;
+
+/**
+ * {@link MemberController} 의 비동기 버전. 조회는 {@link AsyncQueryExecutor} 스레드에서 실행된다.
+ * 요청이 몰리면 큐가 찬 만큼 바로 503 으로 거절되므로 서블릿 스레드가 DB 를 기다리며 묶이지 않는다.
+ * 쿼리 시간 예산({@link QueryBudget})은 동기 버전과 같고, 클라이언트가 연결을 끊으면 실행 중인 쿼리를 취소한다.
+ */
+@RestController
+@RequiredArgsConstructor
+public class MemberAsyncController {
+
+    private final MemberJpaRepository memberJpaRepository;
+
+    private final MemberRepository memberRepository;
+
+    private final MemberTestRepository memberTestRepository;
+
+    private final AsyncQueryExecutor asyncQueryExecutor;
+
+    @GetMapping("/async/v1/members")
+    @QueryBudget("${querydsl.query-budget.v1-millis:2000}")
+    public DeferredResult<List<MemberTeamDto>> searchMemberV1(MemberSearchCondition condition) {
+
+        return asyncQueryExecutor.defer(() -> memberJpaRepository.search(condition));
+    }
+
+    @GetMapping("/async/v2/members")
+    @QueryBudget("${querydsl.query-budget.v2-millis:1000}")
+    public DeferredResult<Page<MemberTeamDto>> searchMemberV2(MemberSearchCondition condition, Pageable pageable) {
+
+        return asyncQueryExecutor.defer(() -> memberRepository.searchPageSimple(condition, pageable));
+    }
+
+    @GetMapping("/async/v3/members")
+    @QueryBudget("${querydsl.query-budget.v3-millis:1000}")
+    public DeferredResult<Page<MemberTeamDto>> searchMemberV2_complex(MemberSearchCondition condition, Pageable pageable) {
+
+        return asyncQueryExecutor.defer(() -> memberRepository.searchPageComplex(condition, pageable));
+    }
+
+    @GetMapping("/async/v4/members")
+    @QueryBudget("${querydsl.query-budget.v4-millis:1000}")
+    public DeferredResult<Page<MemberTeamDto>> searchMemberV4(MemberSearchCondition condition, Pageable pageable) {
+
+        return asyncQueryExecutor.defer(() -> memberTestRepository.applyPagination1(condition, pageable));
+    }
+}
@@ -3,17 +3,28 @@ package study.querydsl.controller;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import study.querydsl.dto.CursorPage;
+import study.querydsl.dto.EstimatedPage;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.entity.Member;
 import study.querydsl.repository.MemberJpaRepository;
 import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.MemberSortKey;
 import study.querydsl.repository.MemberTestRepository;
+import study.querydsl.repository.support.DataVersion;
 
 import java.util.List;
 
+/**
+ * v1 ~ v4, v6, v7 은 데이터 버전과 요청으로 ETag 를 만들어 If-None-Match 가 같으면 조회 없이 304 로 응답한다.
+ * 같은 엔드포인트들은 {@link QueryBudget} 시간 안에 조회를 끝내지 못하면 쿼리를 취소하고 503 으로 응답한다.
+ */
 @RestController
 @RequiredArgsConstructor
 public class MemberController {
@@ -24,28 +35,75 @@ public class MemberController {
 
     private final MemberTestRepository memberTestRepository;
 
+    private final DataVersion dataVersion;
+
     @GetMapping("/v1/members")
-    public List<MemberTeamDto> searchMemberV1(MemberSearchCondition condition) {
+    @QueryBudget("${querydsl.query-budget.v1-millis:2000}")
+    public List<MemberTeamDto> searchMemberV1(MemberSearchCondition condition, WebRequest request) {
 
+        if (request.checkNotModified(dataVersion.etag("v1", condition.normalize()))) {
+            return null;
+        }
         return memberJpaRepository.search(condition);
     }
 
     @GetMapping("/v2/members")
-    public Page<MemberTeamDto> searchMemberV2(MemberSearchCondition condition, Pageable pageable) {
+    @QueryBudget("${querydsl.query-budget.v2-millis:1000}")
+    public Page<MemberTeamDto> searchMemberV2(MemberSearchCondition condition, Pageable pageable, WebRequest request) {
 
+        if (request.checkNotModified(dataVersion.etag("v2", condition.normalize(), pageable))) {
+            return null;
+        }
         return memberRepository.searchPageSimple(condition, pageable);
     }
 
     @GetMapping("/v3/members")
-    public Page<MemberTeamDto> searchMemberV2_complex(MemberSearchCondition condition, Pageable pageable) {
+    @QueryBudget("${querydsl.query-budget.v3-millis:1000}")
+    public Page<MemberTeamDto> searchMemberV2_complex(MemberSearchCondition condition, Pageable pageable, WebRequest request) {
 
+        if (request.checkNotModified(dataVersion.etag("v3", condition.normalize(), pageable))) {
+            return null;
+        }
         return memberRepository.searchPageComplex(condition, pageable);
     }
 
     @GetMapping("/v4/members")
-    public Page<MemberTeamDto> searchMemberV4(MemberSearchCondition condition, Pageable pageable) {
+    @QueryBudget("${querydsl.query-budget.v4-millis:1000}")
+    public Page<MemberTeamDto> searchMemberV4(MemberSearchCondition condition, Pageable pageable, WebRequest request) {
 
+        if (request.checkNotModified(dataVersion.etag("v4", condition.normalize(), pageable))) {
+            return null;
+        }
         Page<MemberTeamDto> members = memberTestRepository.applyPagination1(condition, pageable);
         return members;
     }
+
+    @GetMapping("/v5/members")
+    public CursorPage<MemberTeamDto> searchMemberV5(MemberSearchCondition condition,
+                                                    @RequestParam(defaultValue = "ID") MemberSortKey sort,
+                                                    @RequestParam(required = false) String cursor,
+                                                    @RequestParam(defaultValue = "20") int size) {
+
+        return memberRepository.searchByCursor(condition, sort, cursor, size);
+    }
+
+    @GetMapping("/v6/members")
+    @QueryBudget("${querydsl.query-budget.v6-millis:1000}")
+    public Slice<MemberTeamDto> searchMemberV6(MemberSearchCondition condition, Pageable pageable, WebRequest request) {
+
+        if (request.checkNotModified(dataVersion.etag("v6", condition.normalize(), pageable))) {
+            return null;
+        }
+        return memberRepository.searchSlice(condition, pageable);
+    }
+
+    @GetMapping("/v7/members")
+    @QueryBudget("${querydsl.query-budget.v7-millis:1000}")
+    public EstimatedPage<MemberTeamDto> searchMemberV7(MemberSearchCondition condition, Pageable pageable, WebRequest request) {
+
+        if (request.checkNotModified(dataVersion.etag("v7", condition.normalize(), pageable))) {
+            return null;
+        }
+        return memberRepository.searchPageEstimated(condition, pageable);
+    }
 }
@@ -0,0 +1,92 @@
+package study.querydsl.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.MemberJpaRepository;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 검색 결과를 List 로 모으지 않고 조회되는 대로 응답에 쓴다.
+ */
+@RestController
+@RequiredArgsConstructor
+public class MemberExportController {
+
+    private final MemberJpaRepository memberJpaRepository;
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${querydsl.export.fetch-size:500}")
+    private int fetchSize;
+
+    @GetMapping("/v1/members/export.ndjson")
+    public void exportNdjson(MemberSearchCondition condition, HttpServletResponse response) throws IOException {
+
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        Writer writer = writer(response);
+        memberJpaRepository.searchStream(condition, fetchSize, dto -> {
+            try {
+                writer.write(objectMapper.writeValueAsString(dto));
+                writer.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.flush();
+    }
+
+    @GetMapping("/v1/members/export.csv")
+    public void exportCsv(MemberSearchCondition condition, HttpServletResponse response) throws IOException {
+
+        response.setContentType("text/csv");
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader("Content-Disposition", "attachment; filename=\"members.csv\"");
+
+        Writer writer = writer(response);
+        writer.write("memberId,username,age,teamId,teamName\n");
+        memberJpaRepository.searchStream(condition, fetchSize, dto -> {
+            try {
+                writer.write(toCsv(dto));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.flush();
+    }
+
+    private Writer writer(HttpServletResponse response) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    private String toCsv(MemberTeamDto dto) {
+        return dto.getMemberId() + ","
+                + csvField(dto.getUsername()) + ","
+                + dto.getAge() + ","
+                + (dto.getTeamId() == null ? "" : dto.getTeamId()) + ","
+                + csvField(dto.getTeamName()) + "\n";
+    }
+
+    private String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+}
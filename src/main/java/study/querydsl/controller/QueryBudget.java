@@ -0,0 +1,19 @@
+package study.querydsl.controller;
+
+import study.querydsl.repository.support.QueryDeadline;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 핸들러 메서드의 쿼리 시간 예산(ms). 메서드가 실행되는 동안 {@link QueryDeadline} 예산을 연다.
+ * 값에는 ${querydsl.query-budget.v1-millis:1000} 처럼 프로퍼티를 쓸 수 있다.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface QueryBudget {
+
+    String value();
+}
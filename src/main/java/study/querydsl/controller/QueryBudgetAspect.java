@@ -0,0 +1,32 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import study.querydsl.repository.support.QueryDeadline;
+
+/**
+ * {@link QueryBudget} 이 붙은 핸들러를 예산 안에서 실행한다. 예산 이름은 Controller.method 이다.
+ * 예산을 넘은 쿼리는 QueryTimeoutAdvice 가 503 으로 응답한다.
+ */
+@Aspect
+@Component
+@RequiredArgsConstructor
+public class QueryBudgetAspect {
+
+    private final QueryDeadline queryDeadline;
+    private final Environment environment;
+
+    @Around("@annotation(queryBudget)")
+    public Object open(ProceedingJoinPoint joinPoint, QueryBudget queryBudget) throws Throwable {
+        String name = joinPoint.getSignature().getDeclaringType().getSimpleName() + "." + joinPoint.getSignature().getName();
+        long millis = Long.parseLong(environment.resolveRequiredPlaceholders(queryBudget.value()));
+
+        try (QueryDeadline.Budget ignored = queryDeadline.open(name, millis)) {
+            return joinPoint.proceed();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package study.querydsl.controller;
+
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * 쿼리 시간 예산을 넘었거나 JDBC query timeout 으로 취소된 문장은 503 으로 응답한다.
+ * 리포지토리 밖(@Component)에서 실행한 쿼리는 번역되지 않은 javax.persistence.QueryTimeoutException 을 던진다.
+ * Hikari 는 timeout 난 커넥션을 닫으므로 이어지는 rollback 이 실패해 TransactionSystemException 으로 감싸여 오기도 한다.
+ */
+@RestControllerAdvice
+public class QueryTimeoutAdvice {
+
+    @ExceptionHandler({QueryTimeoutException.class, javax.persistence.QueryTimeoutException.class})
+    public ResponseEntity<String> queryTimeout(RuntimeException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("조회 시간 예산을 넘었습니다.");
+    }
+
+    @ExceptionHandler(TransactionSystemException.class)
+    public ResponseEntity<String> rollbackFailed(TransactionSystemException e) {
+        Throwable cause = e.getApplicationException();
+        if (cause instanceof QueryTimeoutException || cause instanceof javax.persistence.QueryTimeoutException) {
+            return queryTimeout(e);
+        }
+        throw e;
+    }
+}
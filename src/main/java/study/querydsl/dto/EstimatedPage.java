@@ -0,0 +1,25 @@
+package study.querydsl.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 전체 건수가 추정치일 수 있는 페이지.
+ * totalExact 가 false 면 전체 건수는 totalElements 이상이다. (화면에는 "10,000+" 처럼 표시한다)
+ */
+@Data
+public class EstimatedPage<T> {
+
+    private final List<T> content;
+    private final int number;
+    private final int size;
+    private final boolean last;
+
+    private final long totalElements;
+    private final boolean totalExact;
+
+    public boolean hasNext() {
+        return !last;
+    }
+}
@@ -2,13 +2,32 @@ package study.querydsl.dto;
 
 import lombok.Data;
 
+import static org.springframework.util.StringUtils.isEmpty;
+
 @Data
 public class MemberSearchCondition {
 
     //회원명, 팀명, 나이
     private String username;
+    //회원명 앞부분, 회원명에 포함된 문자열 (대소문자 구분)
+    private String usernamePrefix;
+    private String usernameContains;
     private String teamName;
     private Integer ageGoe;
     private Integer ageLoe;
 
+    /**
+     * 같은 쿼리가 되는 조건이 같은 값이 되도록 정규화한 사본. (빈 문자열은 조건 없음과 같다)
+     * 캐시 키로 사용한다.
+     */
+    public MemberSearchCondition normalize() {
+        MemberSearchCondition normalized = new MemberSearchCondition();
+        normalized.setUsername(isEmpty(username) ? null : username);
+        normalized.setUsernamePrefix(isEmpty(usernamePrefix) ? null : usernamePrefix);
+        normalized.setUsernameContains(isEmpty(usernameContains) ? null : usernameContains);
+        normalized.setTeamName(isEmpty(teamName) ? null : teamName);
+        normalized.setAgeGoe(ageGoe);
+        normalized.setAgeLoe(ageLoe);
+        return normalized;
+    }
 }
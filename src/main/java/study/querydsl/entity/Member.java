@@ -3,18 +3,30 @@ package study.querydsl.entity;
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.*;
+import study.querydsl.repository.MemberTeamViewListener;
 
 import javax.persistence.*;
 
 @Entity
+@EntityListeners(MemberTeamViewListener.class)
 @Getter
 @Setter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 @ToString(of = {"id","username","age"})
+@Table(indexes = {
+        @Index(name = "idx_member_username", columnList = "username"),
+        @Index(name = "idx_member_age", columnList = "age"),
+        //팀 + 나이 검색용. MemberTeamDto 의 회원 컬럼을 모두 담아 테이블을 읽지 않는다. (member_id 는 PK 라 포함된다)
+        @Index(name = "idx_member_team_age_username", columnList = "team_id, age, username")
+})
+@SequenceGenerator(name = "member_seq_generator", sequenceName = Member.SEQUENCE_NAME, allocationSize = Member.ID_ALLOCATION_SIZE)
 public class Member {
 
+    public static final String SEQUENCE_NAME = "member_seq";
+    public static final int ID_ALLOCATION_SIZE = 1000;
+
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "member_seq_generator")
     @Column(name = "member_id")
     private Long id;
 
@@ -44,7 +56,7 @@ public class Member {
         }
     }
 
-    private void changeTeam(Team team) {
+    public void changeTeam(Team team) {
         this.team = team;
         team.getMembers().add(this);
     }
@@ -0,0 +1,51 @@
+package study.querydsl.entity;
+
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.annotations.Immutable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.io.Serializable;
+
+/**
+ * 회원 이름 부분 검색용 n-gram 색인. 이름의 위치마다 그 위치부터 3글자(끝에서는 남은 글자)를 한 행으로 저장한다.
+ * PK (gram, member_id) 순서라 gram 으로 찾으면 인덱스만 읽는다.
+ * MemberUsernameIndex 가 JDBC 로 갱신하므로 JPA 로는 읽기만 한다.
+ */
+@Entity
+@Immutable
+@IdClass(MemberUsernameGram.Key.class)
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@ToString
+@Table(name = "member_username_gram", indexes = @Index(name = "idx_member_username_gram_member_id", columnList = "member_id"))
+public class MemberUsernameGram {
+
+    public static final int GRAM_LENGTH = 3;
+
+    @Id
+    @Column(length = GRAM_LENGTH)
+    private String gram;
+
+    @Id
+    @Column(name = "member_id")
+    private Long memberId;
+
+    @EqualsAndHashCode
+    @NoArgsConstructor
+    public static class Key implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private String gram;
+        private Long memberId;
+    }
+}
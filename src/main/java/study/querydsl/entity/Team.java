@@ -2,26 +2,43 @@ package study.querydsl.entity;
 
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import study.querydsl.repository.MemberTeamViewListener;
 
 import javax.persistence.*;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
+@EntityListeners(MemberTeamViewListener.class)
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Team.CACHE_REGION)
 @Getter
 @Setter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 @ToString(of = {"id","name"})
+@Table(indexes = @Index(name = "idx_team_name", columnList = "name"))
+@SequenceGenerator(name = "team_seq_generator", sequenceName = Team.SEQUENCE_NAME, allocationSize = Team.ID_ALLOCATION_SIZE)
 public class Team {
 
+    public static final String SEQUENCE_NAME = "team_seq";
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    //2차 캐시 영역. 엔티티, 팀 이름 -> id 조회 결과
+    public static final String CACHE_REGION = "team";
+    public static final String ID_BY_NAME_CACHE_REGION = "teamIdByName";
+
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "team_seq_generator")
     @Column(name = "team_id")
     private Long id;
 
     private String name;
 
     @JsonManagedReference
+    @BatchSize(size = 100)
     @OneToMany(mappedBy = "team")
     List<Member> members = new ArrayList<>();
 
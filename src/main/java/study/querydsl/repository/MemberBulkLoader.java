@@ -0,0 +1,118 @@
+package study.querydsl.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.support.MemberTeamChangePublisher;
+import study.querydsl.repository.support.PooledIdAllocator;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 대량 초기 데이터 적재.
+ * 영속성 컨텍스트를 거치지 않고 JDBC batch insert 로 batchSize 건씩 넣으므로 flush/clear 가 필요 없고 메모리도 batchSize 만큼만 쓴다.
+ * id 는 {@link PooledIdAllocator} 로 시퀀스에서 블록 단위로 받는다.
+ */
+@Slf4j
+@Repository
+public class MemberBulkLoader {
+
+    private static final String INSERT_TEAM = "insert into team (team_id, name) values (?, ?)";
+    private static final String INSERT_MEMBER = "insert into member (member_id, username, age, team_id) values (?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Dialect dialect;
+    private final MemberTeamChangePublisher changePublisher;
+
+    public MemberBulkLoader(JdbcTemplate jdbcTemplate, EntityManagerFactory emf, MemberTeamChangePublisher changePublisher) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dialect = emf.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+        this.changePublisher = changePublisher;
+    }
+
+    /**
+     * @return 적재한 회원 수
+     */
+    public long load(MemberSeedProperties properties) {
+        properties.assertValid();
+        long start = System.nanoTime();
+
+        List<Long> teamIds = insertTeams(properties.getTeamCount());
+        long members = insertMembers(properties, teamIds);
+        //JDBC 로 넣었으므로 Hibernate 이벤트가 없다.
+        changePublisher.publish(Team.class, null);
+        changePublisher.publish(Member.class, null);
+
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        log.info("seeded {} teams, {} members in {} s ({} rows/sec)",
+                teamIds.size(), members, String.format("%.2f", seconds), String.format("%.0f", (teamIds.size() + members) / seconds));
+        return members;
+    }
+
+    private List<Long> insertTeams(int teamCount) {
+        PooledIdAllocator teamIdAllocator = allocator(Team.SEQUENCE_NAME, Team.ID_ALLOCATION_SIZE);
+
+        List<Long> teamIds = new ArrayList<>(teamCount);
+        List<Object[]> rows = new ArrayList<>(teamCount);
+        for (int i = 0; i < teamCount; i++) {
+            long id = teamIdAllocator.nextId();
+            teamIds.add(id);
+            rows.add(new Object[]{id, teamName(i, teamCount)});
+        }
+        jdbcTemplate.batchUpdate(INSERT_TEAM, rows);
+        return teamIds;
+    }
+
+    private long insertMembers(MemberSeedProperties properties, List<Long> teamIds) {
+        PooledIdAllocator memberIdAllocator = allocator(Member.SEQUENCE_NAME, Member.ID_ALLOCATION_SIZE);
+        Random random = new Random(0);
+
+        List<Object[]> rows = new ArrayList<>(properties.getBatchSize());
+        for (int i = 0; i < properties.getMemberCount(); i++) {
+            Long teamId = teamIds.isEmpty() ? null : teamIds.get(i % teamIds.size());
+            rows.add(new Object[]{memberIdAllocator.nextId(), "member" + i, age(properties, i, random), teamId});
+
+            if (rows.size() == properties.getBatchSize()) {
+                jdbcTemplate.batchUpdate(INSERT_MEMBER, rows);
+                rows.clear();
+            }
+        }
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_MEMBER, rows);
+        }
+        return properties.getMemberCount();
+    }
+
+    private PooledIdAllocator allocator(String sequenceName, int incrementSize) {
+        return new PooledIdAllocator(jdbcTemplate, dialect.getSequenceNextValString(sequenceName), incrementSize);
+    }
+
+    /**
+     * 26개 이하면 teamA, teamB, ... 그보다 많으면 team0, team1, ...
+     */
+    private String teamName(int index, int teamCount) {
+        return teamCount <= 26 ? "team" + (char) ('A' + index) : "team" + index;
+    }
+
+    private int age(MemberSeedProperties properties, int index, Random random) {
+        int min = properties.getAgeMin();
+        int range = properties.getAgeMax() - min + 1;
+
+        switch (properties.getAgeDistribution()) {
+            case UNIFORM:
+                return min + random.nextInt(range);
+            case NORMAL:
+                int age = (int) Math.round(min + range / 2.0 + random.nextGaussian() * range / 6.0);
+                return Math.max(min, Math.min(properties.getAgeMax(), age));
+            default:
+                return min + index % range;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.querydsl.jpa.impl.JPAUpdateClause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+import study.querydsl.entity.Member;
+import study.querydsl.repository.support.BulkProgress;
+import study.querydsl.repository.support.MemberTeamChangePublisher;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * 대량 update/delete 를 id 구간(청크)으로 나눠 청크마다 짧은 트랜잭션으로 실행한다.
+ * 한 문장으로 전체 범위를 잠그지 않으므로 운영 중에도 돌릴 수 있다.
+ * <pre>
+ * bulkRepository.update(member.age.lt(20), update -> update.set(member.age, member.age.add(1)));
+ * bulkRepository.delete(member.team.isNull());
+ * </pre>
+ * 청크는 조건에 맞는 id 를 순서대로 chunkSize 개씩 끊어 [첫 id, 마지막 id] 구간에만 실행한다.
+ * 각 청크는 새 트랜잭션(REQUIRES_NEW)에서 커밋되므로 호출한 쪽 트랜잭션을 롤백해도 되돌려지지 않는다.
+ * 호출한 쪽 트랜잭션이 이미 회원/팀을 변경(flush)했으면 청크가 그 트랜잭션의 행 잠금을 lock timeout 까지 기다리므로
+ * IllegalStateException 으로 거절한다. 변경은 커밋한 뒤에 호출한다.
+ * <p>
+ * 청크가 커밋되면 호출한 쪽 영속성 컨텍스트에 있는 해당 회원만 refresh(update) 또는 detach(delete) 한다.
+ * (em.clear() 로 전부 비우지 않는다) refresh 하므로 그 회원의 flush 하지 않은 변경은 사라진다.
+ */
+@Slf4j
+@Repository
+public class MemberBulkRepository {
+
+    private final EntityManagerFactory emf;
+    private final JPAQueryFactory queryFactory;
+    private final TransactionTemplate chunkTransaction;
+    private final MeterRegistry meterRegistry;
+    private final int chunkSize;
+    //청크 사이에 쉬는 시간. 다른 트랜잭션이 잠금을 얻을 틈을 준다.
+    private final long pauseMillis;
+
+    public MemberBulkRepository(EntityManagerFactory emf,
+                                JPAQueryFactory queryFactory,
+                                PlatformTransactionManager transactionManager,
+                                MeterRegistry meterRegistry,
+                                @Value("${querydsl.bulk.chunk-size:1000}") int chunkSize,
+                                @Value("${querydsl.bulk.pause-millis:0}") long pauseMillis) {
+        this.emf = emf;
+        this.queryFactory = queryFactory;
+        Assert.isTrue(chunkSize > 0, "querydsl.bulk.chunk-size 는 1 이상이어야 합니다: " + chunkSize);
+        this.chunkTransaction = new TransactionTemplate(transactionManager);
+        this.chunkTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.meterRegistry = meterRegistry;
+        this.chunkSize = chunkSize;
+        this.pauseMillis = pauseMillis;
+    }
+
+    public BulkProgress update(Predicate condition, Consumer<JPAUpdateClause> assignments) {
+        return update(condition, assignments, progress -> log.debug("bulk {}", progress));
+    }
+
+    /**
+     * @param assignments set 절. where 절은 청크마다 붙인다.
+     * @param listener    청크가 커밋될 때마다 호출된다.
+     */
+    public BulkProgress update(Predicate condition, Consumer<JPAUpdateClause> assignments, Consumer<BulkProgress> listener) {
+        return execute("update", condition, listener, range -> {
+            JPAUpdateClause update = queryFactory.update(member);
+            assignments.accept(update);
+            return update.where(condition, range).execute();
+        });
+    }
+
+    public BulkProgress delete(Predicate condition) {
+        return delete(condition, progress -> log.debug("bulk {}", progress));
+    }
+
+    public BulkProgress delete(Predicate condition, Consumer<BulkProgress> listener) {
+        return execute("delete", condition, listener, range -> queryFactory.delete(member)
+                .where(condition, range)
+                .execute());
+    }
+
+    private BulkProgress execute(String operation, Predicate condition, Consumer<BulkProgress> listener, ChunkStatement statement) {
+        if (MemberTeamChangePublisher.hasChanges()) {
+            throw new IllegalStateException("회원/팀을 변경한 트랜잭션 안에서는 청크 " + operation + " 를 실행할 수 없습니다. (청크 트랜잭션이 그 잠금을 기다린다)");
+        }
+        Timer timer = meterRegistry.timer("repository.bulk.chunks", "operation", operation);
+        long start = System.nanoTime();
+        BulkProgress progress = new BulkProgress(operation, 0, 0, null, 0);
+
+        while (true) {
+            Long lastId = progress.getLastId();
+            long chunkStart = System.nanoTime();
+            Chunk chunk = chunkTransaction.execute(status -> {
+                List<Long> ids = queryFactory
+                        .select(member.id)
+                        .from(member)
+                        .where(condition, idGt(lastId))
+                        .orderBy(member.id.asc())
+                        .limit(chunkSize)
+                        .fetch();
+                if (ids.isEmpty()) {
+                    return null;
+                }
+                long rows = statement.execute(member.id.between(ids.get(0), ids.get(ids.size() - 1)));
+                return new Chunk(ids, rows);
+            });
+            if (chunk == null) {
+                break;
+            }
+            timer.record(System.nanoTime() - chunkStart, TimeUnit.NANOSECONDS);
+            meterRegistry.counter("repository.bulk.rows", "operation", operation).increment(chunk.rows);
+
+            synchronize(chunk.ids, "delete".equals(operation));
+
+            progress = new BulkProgress(operation, progress.getChunks() + 1, progress.getRows() + chunk.rows,
+                    chunk.ids.get(chunk.ids.size() - 1), System.nanoTime() - start);
+            listener.accept(progress);
+
+            if (chunk.ids.size() < chunkSize || !pause()) {
+                break;
+            }
+        }
+
+        log.info("bulk {}", progress);
+        return progress;
+    }
+
+    /**
+     * 호출한 쪽(바깥 트랜잭션 또는 OSIV)의 영속성 컨텍스트에 있는 회원만 맞춘다.
+     */
+    private void synchronize(List<Long> ids, boolean deleted) {
+        EntityManager em = EntityManagerFactoryUtils.getTransactionalEntityManager(emf);
+        if (em == null) {
+            return;
+        }
+        SessionImplementor session = em.unwrap(SessionImplementor.class);
+        EntityPersister persister = session.getFactory().getMetamodel().entityPersister(Member.class);
+        for (Long id : ids) {
+            Object managed = session.getPersistenceContextInternal().getEntity(session.generateEntityKey(id, persister));
+            if (managed == null) {
+                continue;
+            }
+            if (deleted) {
+                em.detach(managed);
+            } else {
+                em.refresh(managed);
+            }
+        }
+    }
+
+    /**
+     * @return 인터럽트되면 false. 이미 커밋한 청크는 그대로 두고 멈춘다.
+     */
+    private boolean pause() {
+        if (pauseMillis <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(pauseMillis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private BooleanExpression idGt(Long lastId) {
+        return lastId == null ? null : member.id.gt(lastId);
+    }
+
+    @FunctionalInterface
+    private interface ChunkStatement {
+        long execute(BooleanExpression range);
+    }
+
+    private static class Chunk {
+
+        private final List<Long> ids;
+        private final long rows;
+
+        Chunk(List<Long> ids, long rows) {
+            this.ids = ids;
+            this.rows = rows;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package study.querydsl.repository;
+
+import study.querydsl.dto.MemberTeamDto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 키셋 페이징 커서. 클라이언트에는 Base64(URL-safe) 문자열로만 노출한다.
+ * 형식: {sortKey}|{F|B}|{memberId}|{value}
+ */
+class MemberCursor {
+
+    private static final String SEPARATOR = "|";
+
+    final MemberSortKey sortKey;
+    final boolean forward;
+    final Long memberId;
+    final Object value;
+
+    private MemberCursor(MemberSortKey sortKey, boolean forward, Long memberId, Object value) {
+        this.sortKey = sortKey;
+        this.forward = forward;
+        this.memberId = memberId;
+        this.value = value;
+    }
+
+    static String encode(MemberSortKey sortKey, boolean forward, MemberTeamDto row) {
+        String raw = sortKey.name() + SEPARATOR
+                + (forward ? "F" : "B") + SEPARATOR
+                + row.getMemberId() + SEPARATOR
+                + sortKey.valueOf(row);
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static MemberCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\" + SEPARATOR, 4);
+            if (parts.length != 4) {
+                throw new IllegalArgumentException("잘못된 커서입니다: " + cursor);
+            }
+            MemberSortKey sortKey = MemberSortKey.valueOf(parts[0]);
+            return new MemberCursor(sortKey, "F".equals(parts[1]), Long.valueOf(parts[2]), sortKey.parse(parts[3]));
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException 포함
+            throw new IllegalArgumentException("잘못된 커서입니다: " + cursor, e);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package study.querydsl.repository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 회원, 팀을 영속성 컨텍스트로 대량 저장한다. (엔티티 리스너와 캐시 무효화를 그대로 거친다)
+ * <pre>
+ * ingestRepository.saveAll(teams);
+ * ingestRepository.saveAll(members);
+ * </pre>
+ * id 가 없는 엔티티는 insert, 있는 엔티티(준영속)는 조회 없이 update 한다.
+ * chunkSize 건마다 flush/clear 하므로 영속성 컨텍스트는 chunkSize 만큼만 커진다.
+ * flush 는 hibernate.jdbc.batch_size, order_inserts/order_updates 로 엔티티 종류별 JDBC batch 가 되고,
+ * id 는 pooled 시퀀스(allocationSize)로 블록 단위로 받으므로 문장 수는 행 수가 아니라 batch 수에 비례한다.
+ * <p>
+ * 호출한 쪽 트랜잭션에 참여하므로 그 영속성 컨텍스트도 flush/clear 된다.
+ * 청크가 나뉘어도 참조는 id 로 저장되므로 팀을 먼저 저장하면 회원은 준영속 팀을 참조해도 된다.
+ * 청크 flush 시간은 repository.ingest.chunks, 저장한 행 수는 repository.ingest.rows (operation=insert|update) 로 기록한다.
+ */
+@Slf4j
+@Repository
+public class MemberIngestRepository {
+
+    private final EntityManager em;
+    private final MeterRegistry meterRegistry;
+    private final int chunkSize;
+
+    public MemberIngestRepository(EntityManager em,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${querydsl.ingest.chunk-size:${spring.jpa.properties.hibernate.jdbc.batch_size:50}}") int chunkSize) {
+        this.em = em;
+        this.meterRegistry = meterRegistry;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return 저장한 엔티티 수
+     */
+    @Transactional
+    public long saveAll(Iterable<?> entities) {
+        Session session = em.unwrap(Session.class);
+        Timer timer = meterRegistry.timer("repository.ingest.chunks");
+        long inserted = 0;
+        long updated = 0;
+        int pending = 0;
+
+        long chunkStart = System.nanoTime();
+        for (Object entity : entities) {
+            if (id(entity) == null) {
+                em.persist(entity);
+                inserted++;
+            } else {
+                //merge 는 행마다 select 하므로 준영속 엔티티를 그대로 다시 붙인다.
+                session.update(entity);
+                updated++;
+            }
+
+            if (++pending == chunkSize) {
+                flush();
+                timer.record(System.nanoTime() - chunkStart, TimeUnit.NANOSECONDS);
+                pending = 0;
+                chunkStart = System.nanoTime();
+            }
+        }
+        if (pending > 0) {
+            flush();
+            timer.record(System.nanoTime() - chunkStart, TimeUnit.NANOSECONDS);
+        }
+
+        meterRegistry.counter("repository.ingest.rows", "operation", "insert").increment(inserted);
+        meterRegistry.counter("repository.ingest.rows", "operation", "update").increment(updated);
+        log.debug("ingest inserted {}, updated {}", inserted, updated);
+        return inserted + updated;
+    }
+
+    private void flush() {
+        em.flush();
+        em.clear();
+    }
+
+    private static Long id(Object entity) {
+        if (entity instanceof Member) {
+            return ((Member) entity).getId();
+        }
+        if (entity instanceof Team) {
+            return ((Team) entity).getId();
+        }
+        throw new IllegalArgumentException("Member 나 Team 만 저장할 수 있습니다: " + entity.getClass().getName());
+    }
+}
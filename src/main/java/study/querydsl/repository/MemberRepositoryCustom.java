@@ -2,7 +2,10 @@ package study.querydsl.repository;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Repository;
+import study.querydsl.dto.CursorPage;
+import study.querydsl.dto.EstimatedPage;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 
@@ -16,4 +19,16 @@ public interface MemberRepositoryCustom {
     Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition, Pageable pageable);
 
     Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable);
+
+    /**
+     * size + 1 건을 읽어 다음 페이지 여부만 알려준다. count 쿼리를 실행하지 않는다.
+     */
+    Slice<MemberTeamDto> searchSlice(MemberSearchCondition condition, Pageable pageable);
+
+    /**
+     * 마지막 페이지면 전체 건수를 계산하고, 아니면 querydsl.estimated-count.cap 건까지만 센다.
+     */
+    EstimatedPage<MemberTeamDto> searchPageEstimated(MemberSearchCondition condition, Pageable pageable);
+
+    CursorPage<MemberTeamDto> searchByCursor(MemberSearchCondition condition, MemberSortKey sortKey, String cursor, int size);
 }
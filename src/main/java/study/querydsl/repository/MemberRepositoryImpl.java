@@ -1,107 +1,96 @@
 package study.querydsl.repository;
 
-import com.querydsl.core.QueryResults;
-import com.querydsl.core.types.dsl.BooleanExpression;
 import com.querydsl.jpa.JPQLQuery;
-import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.jpa.repository.support.QuerydslRepositorySupport;
-import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.CursorPage;
+import study.querydsl.dto.EstimatedPage;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.dto.QMemberTeamDto;
 import study.querydsl.entity.Member;
+import study.querydsl.repository.support.CountCache;
+import study.querydsl.repository.support.MemberSearchCache;
+import study.querydsl.repository.support.PageQueryExecutor;
 
 import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
-import static org.springframework.util.StringUtils.isEmpty;
 import static study.querydsl.entity.QMember.member;
 import static study.querydsl.entity.QTeam.team;
 
+@Transactional(readOnly = true)
 public class MemberRepositoryImpl extends QuerydslRepositorySupport implements MemberRepositoryCustom {
 
     private final JPAQueryFactory queryFactory;
+    private final CountCache countCache;
+    private final MemberSearchQueries searchQueries;
+    private final PageQueryExecutor pageQueryExecutor;
+    private final MemberSearchCache searchCache;
+    private final MemberSnapshot snapshot;
+    private final MemberTeamViewRepository viewRepository;
+    private final MemberSearchPredicates predicates;
+    private final int countCap;
+    private final int cursorMaxSize;
 //
 //    public MemberRepositoryImpl(EntityManager em) {
 //        this.queryFactory = new JPAQueryFactory(em);
 //    }
 
-    public MemberRepositoryImpl(EntityManager em) {
+    public MemberRepositoryImpl(EntityManager em, CountCache countCache, MemberSearchQueries searchQueries,
+                                PageQueryExecutor pageQueryExecutor, MemberSearchCache searchCache, MemberSnapshot snapshot,
+                                MemberTeamViewRepository viewRepository, MemberSearchPredicates predicates,
+                                @Value("${querydsl.estimated-count.cap:10000}") int countCap,
+                                @Value("${querydsl.cursor.max-size:100}") int cursorMaxSize) {
         super(Member.class);
         this.queryFactory = new JPAQueryFactory(em);
+        this.countCache = countCache;
+        this.searchQueries = searchQueries;
+        this.pageQueryExecutor = pageQueryExecutor;
+        this.searchCache = searchCache;
+        this.snapshot = snapshot;
+        this.viewRepository = viewRepository;
+        this.predicates = predicates;
+        this.countCap = countCap;
+        this.cursorMaxSize = cursorMaxSize;
     }
 
     @Override
     public List<MemberTeamDto> search(MemberSearchCondition condition) {
-
-        List<MemberTeamDto> result = from(member)
-                .leftJoin(member.team, team)
-                .where(usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe()))
-                .select(new QMemberTeamDto(
-                        member.id.as("memberId"),
-                        member.username,
-                        member.age,
-                        team.id.as("teamId"),
-                        team.name.as("teamName")))
-                .fetch();
-
-        return queryFactory
-                .select(new QMemberTeamDto(
-                        member.id.as("memberId"),
-                        member.username,
-                        member.age,
-                        team.id.as("teamId"),
-                        team.name.as("teamName")))
-                .from(member)
-                .leftJoin(member.team, team)
-                .where(usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe()))
-                .fetch();
+        if (snapshot.canServe()) {
+            return snapshot.search(condition);
+        }
+        if (viewRepository.canServe()) {
+            return viewRepository.search(condition);
+        }
+
+        return searchQueries.search(condition);
     }
 
     @Override
     public Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition, Pageable pageable) {
-        QueryResults<MemberTeamDto> results = queryFactory
-                .select(new QMemberTeamDto(
-                        member.id.as("memberId"),
-                        member.username,
-                        member.age,
-                        team.id.as("teamId"),
-                        team.name.as("teamName")))
-                .from(member)
-                .leftJoin(member.team, team)
-                .where(usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe()))
-                .offset(pageable.getOffset())
-                .limit(pageable.getPageSize())
-                .fetchResults();
+        return searchCache.get("searchPageSimple", condition, pageable, () -> {
+            List<MemberTeamDto> content = searchQueries.search(condition, pageable.getOffset(), pageable.getPageSize());
+            long total = searchQueries.count(condition);
 
-
-        List<MemberTeamDto> content = results.getResults();
-        long total = results.getTotal();
-
-        return new PageImpl<>(content, pageable, total);
+            return new PageImpl<>(content, pageable, total);
+        });
     }
 
 //    public Page<MemberTeamDto> searchPageSimple2(MemberSearchCondition condition, Pageable pageable) {
 //
-//        JPQLQuery<MemberTeamDto> jpqlQuery = from(member)
-//                .leftJoin(member.team, team)
-//                .where(usernameEq(condition.getUsername()),
-//                        teamNameEq(condition.getTeamName()),
-//                        ageGoe(condition.getAgeGoe()),
-//                        ageLoe(condition.getAgeLoe()))
+//        JPQLQuery<MemberTeamDto> jpqlQuery = predicates.applyTo(from(member)
+//                .leftJoin(member.team, team), condition)
 //                .select(new QMemberTeamDto(
 //                        member.id.as("memberId"),
 //                        member.username,
@@ -117,25 +106,79 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
 
     @Override
     public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable) {
-        List<MemberTeamDto> result = getMemberTeamDtos(condition, pageable);
+        if (snapshot.canServe()) {
+            return snapshot.searchPage(condition, pageable);
+        }
+        if (viewRepository.canServe()) {
+            return searchCache.get("searchPageComplex", condition, pageable, () -> viewRepository.searchPage(condition, pageable));
+        }
+        return searchCache.get("searchPageComplex", condition, pageable, () -> pageQueryExecutor.getPage(
+                () -> searchQueries.search(condition, pageable.getOffset(), pageable.getPageSize()),
+                pageable,
+                () -> countCache.get(Arrays.asList(Member.class, condition.normalize()), () -> searchQueries.count(condition))));
+    }
 
-        JPAQuery<Member> query = getCount(condition);
+    @Override
+    public Slice<MemberTeamDto> searchSlice(MemberSearchCondition condition, Pageable pageable) {
+        return searchCache.get("searchSlice", condition, pageable, () -> {
+            int size = pageable.getPageSize();
+            List<MemberTeamDto> rows = content(condition, pageable.getOffset(), size + 1);
+            boolean hasNext = rows.size() > size;
+
+            return new SliceImpl<>(hasNext ? new ArrayList<>(rows.subList(0, size)) : rows, pageable, hasNext);
+        });
+    }
 
-        return PageableExecutionUtils.getPage(result, pageable, query::fetchCount);
+    /**
+     * 다음 페이지가 없으면 offset + 읽은 건수가 전체 건수다.
+     * 있으면 countCap + 1 건까지만 세고 조건별로 {@link CountCache} 에 둔다. 넘으면 전체 건수는 countCap 이상으로 표시한다.
+     */
+    @Override
+    public EstimatedPage<MemberTeamDto> searchPageEstimated(MemberSearchCondition condition, Pageable pageable) {
+        return searchCache.get("searchPageEstimated", condition, pageable, () -> {
+            int size = pageable.getPageSize();
+            List<MemberTeamDto> rows = content(condition, pageable.getOffset(), size + 1);
+            boolean hasNext = rows.size() > size;
+            List<MemberTeamDto> content = hasNext ? new ArrayList<>(rows.subList(0, size)) : rows;
+
+            if (!hasNext) {
+                return new EstimatedPage<>(content, pageable.getPageNumber(), size, true, pageable.getOffset() + content.size(), true);
+            }
+            long counted = countCache.get(Arrays.asList(Member.class, condition.normalize(), countCap),
+                    () -> searchQueries.countUpTo(condition, countCap + 1));
+            boolean exact = counted <= countCap;
+            //다음 페이지가 있으므로 적어도 offset + size + 1 건이다. (count 가 캐시된 뒤 줄었을 수 있다)
+            long total = Math.max(exact ? counted : countCap, pageable.getOffset() + size + 1);
+
+            return new EstimatedPage<>(content, pageable.getPageNumber(), size, false, total, exact);
+        });
     }
 
-    private JPAQuery<Member> getCount(MemberSearchCondition condition) {
-        return queryFactory.select(member)
-                .from(member)
-                .leftJoin(member.team, team)
-                .where(usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe()));
+    private List<MemberTeamDto> content(MemberSearchCondition condition, long offset, int limit) {
+        if (snapshot.canServe()) {
+            return snapshot.search(condition, offset, limit);
+        }
+        if (viewRepository.canServe()) {
+            return viewRepository.search(condition, offset, limit);
+        }
+        return searchQueries.search(condition, offset, limit);
     }
 
-    private List<MemberTeamDto> getMemberTeamDtos(MemberSearchCondition condition, Pageable pageable) {
-        return queryFactory
+    /**
+     * offset 대신 (정렬 키, member_id) 위치로 탐색하는 키셋 페이징.
+     * 몇 번째 페이지든 인덱스에서 커서 위치부터 size + 1 건만 읽는다.
+     * size 가 1 ~ querydsl.cursor.max-size 를 벗어나거나 커서가 잘못되었으면 IllegalArgumentException 으로 거절한다. (웹에서는 400)
+     */
+    @Override
+    public CursorPage<MemberTeamDto> searchByCursor(MemberSearchCondition condition, MemberSortKey sortKey, String cursor, int size) {
+        if (size < 1 || size > cursorMaxSize) {
+            throw new IllegalArgumentException("size 는 1 ~ " + cursorMaxSize + " 이어야 합니다: " + size);
+        }
+        MemberCursor position = cursor == null ? null : MemberCursor.decode(cursor);
+        MemberSortKey key = position == null ? sortKey : position.sortKey;
+        boolean forward = position == null || position.forward;
+
+        List<MemberTeamDto> rows = predicates.applyTo(queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
@@ -143,34 +186,33 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
                         team.id.as("teamId"),
                         team.name.as("teamName")))
                 .from(member)
-                .leftJoin(member.team, team)
-                .where(usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe()))
-                .offset(pageable.getOffset())
-                .limit(pageable.getPageSize())
+                .leftJoin(member.team, team), condition)
+                .where(key.notNull(),
+                        position == null ? null : key.seek(position.value, position.memberId, forward))
+                .orderBy(key.orderBy(forward))
+                .limit(size + 1)
                 .fetch();
-    }
 
-    private BooleanExpression ageBetween(int ageLoe, int ageGoe) {
-        return ageGoe(ageLoe).and(ageGoe(ageGoe));
-    }
+        boolean hasMore = rows.size() > size;
+        List<MemberTeamDto> content = hasMore ? rows.subList(0, size) : rows;
+        if (!forward) {
+            Collections.reverse(content);
+        }
 
-    private BooleanExpression ageLoe(Integer ageLoe) {
-        return ageLoe != null ? member.age.loe(ageLoe) : null;
-    }
+        if (content.isEmpty()) {
+            return new CursorPage<>(content, null, null);
+        }
 
-    private BooleanExpression ageGoe(Integer ageGoe) {
-        return ageGoe != null ? member.age.goe(ageGoe) : null;
-    }
+        MemberTeamDto first = content.get(0);
+        MemberTeamDto last = content.get(content.size() - 1);
 
-    private BooleanExpression teamNameEq(String teamName) {
-        return isEmpty(teamName) ? null : team.name.eq(teamName);
-    }
+        // 앞으로 읽었다면 다음 페이지는 hasMore 로, 이전 페이지는 커서 존재 여부로 판단한다. 뒤로 읽었다면 그 반대.
+        boolean hasNext = forward ? hasMore : true;
+        boolean hasPrevious = forward ? position != null : hasMore;
 
-    private BooleanExpression usernameEq(String username) {
-        return isEmpty(username) ? null : member.username.eq(username);
+        return new CursorPage<>(content,
+                hasNext ? MemberCursor.encode(key, true, last) : null,
+                hasPrevious ? MemberCursor.encode(key, false, first) : null);
     }
 
 }
@@ -0,0 +1,91 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.SimpleQuery;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.Expressions;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.MemberSearchCondition;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.springframework.util.StringUtils.isEmpty;
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * MemberSearchCondition 의 where 절. 회원 검색(v1~v7, 커서, 스트림, {@link MemberSearchQueries})은 모두 여기서 조건을 만든다.
+ * member 를 from 으로 한 쿼리에 쓴다. (team 을 join 하지 않아도 된다)
+ * <pre>
+ * predicates.applyTo(queryFactory.selectFrom(member).leftJoin(member.team, team), condition)
+ * </pre>
+ * 팀 이름은 {@link TeamRepository#findIdsByName} (쿼리 캐시) 로 id 로 바꿔 member.team_id 로 거른다. 없는 팀이면 결과가 없다.
+ * 이름 앞부분은 [prefix, prefix + U+FFFF) 범위로 username 인덱스를 범위 검색하고,
+ * 이름에 포함된 문자열은 {@link MemberUsernameIndex} n-gram 색인으로 회원을 찾는다. (색인을 쓸 수 없으면 like 로 훑는다)
+ */
+@Component
+public class MemberSearchPredicates {
+
+    //팀 이름에 맞는 팀이 없을 때. 항상 거짓
+    private static final Predicate NONE = Expressions.booleanTemplate("1 = 0");
+
+    private final TeamRepository teamRepository;
+    private final MemberUsernameIndex usernameIndex;
+
+    public MemberSearchPredicates(TeamRepository teamRepository, MemberUsernameIndex usernameIndex) {
+        this.teamRepository = teamRepository;
+        this.usernameIndex = usernameIndex;
+    }
+
+    /**
+     * condition 의 where 절을 query 에 추가한다. 조건이 없으면 아무것도 추가하지 않는다.
+     */
+    public <Q extends SimpleQuery<?>> Q applyTo(Q query, MemberSearchCondition condition) {
+        query.where(where(condition));
+        return query;
+    }
+
+    /**
+     * condition 의 where 절. 팀 이름에 맞는 팀이 없으면 항상 거짓인 조건 하나다.
+     */
+    public Predicate[] where(MemberSearchCondition condition) {
+        List<Predicate> where = new ArrayList<>();
+        if (!isEmpty(condition.getUsername())) {
+            where.add(member.username.eq(condition.getUsername()));
+        }
+        if (!isEmpty(condition.getTeamName())) {
+            List<Long> teamIds = teamRepository.findIdsByName(condition.getTeamName());
+            if (teamIds.isEmpty()) {
+                return new Predicate[]{NONE};
+            }
+            //member.team.id 는 join 없이 team_id 컬럼이다.
+            where.add(member.team.id.in(teamIds));
+        }
+        if (condition.getAgeGoe() != null) {
+            where.add(member.age.goe(condition.getAgeGoe()));
+        }
+        if (condition.getAgeLoe() != null) {
+            where.add(member.age.loe(condition.getAgeLoe()));
+        }
+        String prefix = condition.getUsernamePrefix();
+        if (!isEmpty(prefix)) {
+            where.add(member.username.goe(prefix).and(member.username.lt(MemberUsernameIndex.upperBound(prefix))));
+        }
+        String contains = condition.getUsernameContains();
+        if (!isEmpty(contains)) {
+            if (!usernameIndex.canServe()) {
+                where.add(member.username.like(MemberUsernameIndex.containsPattern(contains), '!'));
+            } else if (MemberUsernameIndex.isShort(contains)) {
+                //1~2글자 검색어로 시작하는 gram 을 가진 회원
+                where.add(MemberUsernameIndex.hasGramBetween(member.id,
+                        Expressions.constant(contains), Expressions.constant(MemberUsernameIndex.upperBound(contains))));
+            } else {
+                //3글자 이상 검색어의 3-gram 을 모두 가진 회원 중 실제로 포함하는 회원
+                List<String> grams = MemberUsernameIndex.queryGrams(contains);
+                where.add(MemberUsernameIndex.hasAllGrams(member.id,
+                        Expressions.constant(grams), Expressions.constant((long) grams.size())));
+                where.add(member.username.like(MemberUsernameIndex.containsPattern(contains), '!'));
+            }
+        }
+        return where.toArray(new Predicate[0]);
+    }
+}
@@ -0,0 +1,87 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.jpa.impl.JPAQuery;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.repository.support.CountQueryBuilder;
+import study.querydsl.repository.support.QueryDeadline;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * 회원 검색(MemberTeamDto) 의 content, count 쿼리. 조건은 {@link MemberSearchPredicates} 가 만든다. (다른 검색과 같은 where 절)
+ * team 을 조건에 쓰지 않으므로 (team_id, age, username) 인덱스로 회원만 읽는다.
+ * 쿼리 시간 제한(QueryDeadline)은 실행 직전에 건다.
+ */
+@Component
+public class MemberSearchQueries {
+
+    private final EntityManager em;
+    private final MemberSearchPredicates predicates;
+    private final QueryDeadline queryDeadline;
+
+    public MemberSearchQueries(EntityManager em, MemberSearchPredicates predicates, QueryDeadline queryDeadline) {
+        this.em = em;
+        this.predicates = predicates;
+        this.queryDeadline = queryDeadline;
+    }
+
+    public List<MemberTeamDto> search(MemberSearchCondition condition) {
+        return search(condition, null, null);
+    }
+
+    public List<MemberTeamDto> search(MemberSearchCondition condition, Long offset, Integer limit) {
+        JPAQuery<MemberTeamDto> query = contentQuery(condition);
+        if (offset != null) {
+            query.offset(offset);
+        }
+        if (limit != null) {
+            query.limit(limit);
+        }
+        queryDeadline.apply(query);
+        return query.fetch();
+    }
+
+    public long count(MemberSearchCondition condition) {
+        JPAQuery<Long> query = CountQueryBuilder.from(em, contentQuery(condition));
+        queryDeadline.apply(query);
+        return query.fetchOne();
+    }
+
+    /**
+     * limit 건까지만 센다. 조건에 맞는 인덱스 항목을 limit 개 읽으면 멈추므로 비용이 전체 건수와 무관하다.
+     * 행마다 id 대신 상수 1 만 읽으므로 엔티티 값을 만들지 않는다.
+     */
+    public long countUpTo(MemberSearchCondition condition, int limit) {
+        //정렬하지 않아야 조건에 맞는 행을 limit 개 찾는 즉시 멈춘다. 1 은 파라미터가 아닌 리터럴로 직렬화된다.
+        JPAQuery<Integer> query = new JPAQuery<>(em)
+                .select(Expressions.numberTemplate(Integer.class, "1"))
+                .from(member)
+                .where(predicates.where(condition))
+                .limit(limit);
+        queryDeadline.apply(query);
+        return query.fetch().size();
+    }
+
+    private JPAQuery<MemberTeamDto> contentQuery(MemberSearchCondition condition) {
+        return new JPAQuery<>(em)
+                .select(new QMemberTeamDto(
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(predicates.where(condition))
+                //offset 페이징 결과가 실행 계획과 무관하게 같도록 고정한다. (MemberSnapshot 도 같은 순서)
+                .orderBy(member.id.asc());
+    }
+}
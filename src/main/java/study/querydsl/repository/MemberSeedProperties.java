@@ -0,0 +1,73 @@
+package study.querydsl.repository;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.Errors;
+import org.springframework.validation.Validator;
+
+/**
+ * 초기 데이터 설정. 기본값은 기존 InitMemberService 와 같다. (회원 100명, teamA/teamB 번갈아, 나이 0~99)
+ * Validator 를 구현하므로 querydsl.seed.* 를 바인딩할 때 검증하고, 잘못된 값이면 애플리케이션이 뜨지 않는다.
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "querydsl.seed")
+public class MemberSeedProperties implements Validator {
+
+    public enum AgeDistribution {
+        //ageMin 부터 순서대로 반복
+        SEQUENTIAL,
+        UNIFORM,
+        //ageMin~ageMax 의 가운데를 평균으로 하는 정규분포
+        NORMAL
+    }
+
+    private int memberCount = 100;
+
+    private int teamCount = 2;
+
+    private int ageMin = 0;
+
+    private int ageMax = 99;
+
+    private AgeDistribution ageDistribution = AgeDistribution.SEQUENTIAL;
+
+    private int batchSize = 1000;
+
+    @Override
+    public boolean supports(Class<?> clazz) {
+        return MemberSeedProperties.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public void validate(Object target, Errors errors) {
+        MemberSeedProperties properties = (MemberSeedProperties) target;
+        if (properties.getMemberCount() < 0) {
+            errors.rejectValue("memberCount", "min", "memberCount 는 0 이상이어야 합니다.");
+        }
+        if (properties.getTeamCount() < 0) {
+            errors.rejectValue("teamCount", "min", "teamCount 는 0 이상이어야 합니다.");
+        }
+        if (properties.getAgeMax() < properties.getAgeMin()) {
+            errors.rejectValue("ageMax", "range", "ageMax 는 ageMin 이상이어야 합니다.");
+        }
+        if (properties.getBatchSize() <= 0) {
+            errors.rejectValue("batchSize", "min", "batchSize 는 1 이상이어야 합니다.");
+        }
+    }
+
+    /**
+     * 직접 만든 설정을 검증한다.
+     */
+    public void assertValid() {
+        Errors errors = new BeanPropertyBindingResult(this, "querydsl.seed");
+        validate(this, errors);
+        if (errors.hasErrors()) {
+            throw new IllegalArgumentException(errors.getAllErrors().toString());
+        }
+    }
+}
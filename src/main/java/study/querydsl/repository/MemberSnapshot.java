@@ -0,0 +1,591 @@
+package study.querydsl.repository;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.support.MemberTeamChangedEvent;
+
+import javax.annotation.PreDestroy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.springframework.util.StringUtils.isEmpty;
+
+/**
+ * 회원 검색용 메모리 읽기 모델. (querydsl.snapshot.enabled=true 일 때 search, searchPageComplex 가 사용한다)
+ * <p>
+ * 회원은 member_id 순으로 정렬된 기본형 배열(member_id, age, team 코드, username 코드)에 두고
+ * username 과 팀은 사전(코드 -> 값)으로 한 번만 저장한다.
+ * 검색은 배열을 한 번 훑는 루프라서 JDBC 왕복이 없고 JIT 가 펼치기 좋다. 팀 조건이 있으면 팀별 행 목록만 훑는다.
+ * 결과와 순서는 {@link MemberSearchQueries} 와 같다.
+ * <p>
+ * Member/Team 변경은 커밋 후 바뀐 행만 다시 읽어 반영하고 벌크 변경은 전체를 다시 읽는다.
+ * 전체 다시 읽기는 커밋한 스레드가 아니라 별도 스레드에서 실행하고, 그동안 들어온 벌크 변경은 한 번으로 합친다.
+ * (청크마다 커밋하는 벌크 update 가 청크마다 O(N) 적재를 기다리지 않는다) 다시 읽기 전까지는 검색을 맡지 않는다.
+ * 쓰기 트랜잭션 안에서는 커밋되지 않은 변경을 볼 수 없으므로 DB 를 조회한다.
+ * 메모리 사용량은 member.snapshot.bytes, member.snapshot.bytes.per.million.rows 로 노출한다.
+ */
+@Slf4j
+@Component
+public class MemberSnapshot {
+
+    private static final String SELECT_TEAMS = "select team_id, name from team";
+    private static final String SELECT_MEMBERS = "select member_id, username, age, team_id from member order by member_id";
+    private static final int IN_CHUNK_SIZE = 500;
+
+    private static final Object CHANGES_KEY = new Object();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean ready;
+
+    private final ThreadPoolTaskExecutor reloadExecutor;
+    private final long retryMillis;
+    private final AtomicBoolean reloadScheduled = new AtomicBoolean();
+    //커밋된 벌크 변경 수와 마지막 전체 적재가 반영한 수
+    private final AtomicLong bulkChanges = new AtomicLong();
+    private volatile long reloadedChanges;
+
+    //회원 컬럼. member_id 오름차순
+    private int size;
+    private long[] memberIds = new long[0];
+    private int[] ages = new int[0];
+    private int[] teamCodes = new int[0];
+    private int[] usernameCodes = new int[0];
+
+    //팀 사전. 코드 = 배열 index, 팀이 없으면 -1
+    private final List<Long> teamIds = new ArrayList<>();
+    private final List<String> teamNames = new ArrayList<>();
+    private final Map<Long, Integer> teamCodeById = new HashMap<>();
+
+    //username 사전
+    private StringDictionary usernames = new StringDictionary();
+
+    //팀 코드 -> 그 팀 회원의 행 위치(오름차순). 팀 조건이 있으면 전체 대신 이 목록만 훑는다.
+    private int[][] teamRows = new int[0][];
+    private int[] teamRowCounts = new int[0];
+    private boolean teamRowsStale;
+
+    public MemberSnapshot(JdbcTemplate jdbcTemplate,
+                          MeterRegistry meterRegistry,
+                          @Value("${querydsl.snapshot.enabled:false}") boolean enabled,
+                          @Value("${querydsl.snapshot.retry-millis:1000}") long retryMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.retryMillis = retryMillis;
+
+        this.reloadExecutor = new ThreadPoolTaskExecutor();
+        this.reloadExecutor.setCorePoolSize(1);
+        this.reloadExecutor.setMaxPoolSize(1);
+        this.reloadExecutor.setThreadNamePrefix("member-snapshot-");
+        this.reloadExecutor.initialize();
+
+        Gauge.builder("member.snapshot.rows", this, s -> s.size).register(meterRegistry);
+        Gauge.builder("member.snapshot.bytes", this, MemberSnapshot::memoryBytes).register(meterRegistry);
+        Gauge.builder("member.snapshot.bytes.per.million.rows", this, MemberSnapshot::bytesPerMillionRows).register(meterRegistry);
+    }
+
+    /**
+     * 활성화되어 있고 적재가 끝났으며 다시 읽을 벌크 변경이 없고 쓰기 트랜잭션 밖일 때만 검색을 맡는다.
+     */
+    public boolean canServe() {
+        return enabled && ready && reloadedChanges == bulkChanges.get()
+                && !(TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+    }
+
+    public List<MemberTeamDto> search(MemberSearchCondition condition) {
+        List<MemberTeamDto> content = new ArrayList<>();
+        scan(condition, 0, Integer.MAX_VALUE, content);
+        return content;
+    }
+
+    public List<MemberTeamDto> search(MemberSearchCondition condition, long offset, int limit) {
+        List<MemberTeamDto> content = new ArrayList<>(limit);
+        scan(condition, offset, limit, content);
+        return content;
+    }
+
+    public Page<MemberTeamDto> searchPage(MemberSearchCondition condition, Pageable pageable) {
+        List<MemberTeamDto> content = new ArrayList<>(pageable.getPageSize());
+        long total = scan(condition, pageable.getOffset(), pageable.getPageSize(), content);
+        return new PageImpl<>(content, pageable, total);
+    }
+
+    /**
+     * 조건에 맞는 전체 건수를 세면서 [offset, offset + limit) 범위만 DTO 로 만든다.
+     */
+    private long scan(MemberSearchCondition condition, long offset, int limit, List<MemberTeamDto> out) {
+        lock.readLock().lock();
+        try {
+            //username 조건이 없으면 -1 (모든 코드와 다르다)
+            int usernameCode = -1;
+            if (!isEmpty(condition.getUsername())) {
+                usernameCode = usernames.find(condition.getUsername());
+                if (usernameCode < 0) {
+                    return 0;
+                }
+            }
+
+            //이름 앞부분/포함 조건은 사전의 이름마다 한 번씩만 비교한다. 없으면 null
+            boolean[] usernameMatches = usernameMatches(condition);
+            boolean noPartial = usernameMatches == null;
+
+            int ageMin = condition.getAgeGoe() == null ? Integer.MIN_VALUE : condition.getAgeGoe();
+            int ageMax = condition.getAgeLoe() == null ? Integer.MAX_VALUE : condition.getAgeLoe();
+            boolean anyUsername = usernameCode < 0;
+            long end = offset + limit;
+
+            //필드를 지역 변수로 옮기고 조건을 분기 없이 합쳐서 루프가 배열 읽기와 비교만 하도록 한다.
+            int[] ages = this.ages;
+            int[] usernameCodes = this.usernameCodes;
+            long total = 0;
+
+            if (isEmpty(condition.getTeamName())) {
+                for (int i = 0; i < size; i++) {
+                    int age = ages[i];
+                    if ((age >= ageMin) & (age <= ageMax) & (anyUsername | usernameCodes[i] == usernameCode)
+                            && (noPartial || usernameMatches[usernameCodes[i]])) {
+                        if (total >= offset && total < end) {
+                            out.add(row(i));
+                        }
+                        total++;
+                    }
+                }
+                return total;
+            }
+
+            //팀이 없는 회원은 left join 이라 팀 이름 조건을 만족하지 않는다.
+            //팀 이름은 유일하지 않으므로 같은 이름의 팀이 여럿이면 행 위치를 합쳐서 정렬한다.
+            int[] rows = null;
+            int count = 0;
+            for (int code = 0; code < teamNames.size(); code++) {
+                if (!condition.getTeamName().equals(teamNames.get(code))) {
+                    continue;
+                }
+                if (rows == null) {
+                    rows = teamRows[code];
+                    count = teamRowCounts[code];
+                } else {
+                    int[] merged = Arrays.copyOf(rows, count + teamRowCounts[code]);
+                    System.arraycopy(teamRows[code], 0, merged, count, teamRowCounts[code]);
+                    Arrays.sort(merged);
+                    rows = merged;
+                    count = merged.length;
+                }
+            }
+            for (int k = 0; k < count; k++) {
+                int i = rows[k];
+                int age = ages[i];
+                if ((age >= ageMin) & (age <= ageMax) & (anyUsername | usernameCodes[i] == usernameCode)
+                        && (noPartial || usernameMatches[usernameCodes[i]])) {
+                    if (total >= offset && total < end) {
+                        out.add(row(i));
+                    }
+                    total++;
+                }
+            }
+            return total;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean[] usernameMatches(MemberSearchCondition condition) {
+        String prefix = condition.getUsernamePrefix();
+        String contains = condition.getUsernameContains();
+        if (isEmpty(prefix) && isEmpty(contains)) {
+            return null;
+        }
+        return usernames.matches(prefix, contains);
+    }
+
+    private MemberTeamDto row(int i) {
+        int teamCode = teamCodes[i];
+        return new MemberTeamDto(memberIds[i], usernames.get(usernameCodes[i]), ages[i],
+                teamCode < 0 ? null : teamIds.get(teamCode),
+                teamCode < 0 ? null : teamNames.get(teamCode));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled && !tryReload()) {
+            scheduleReload();
+        }
+    }
+
+    /**
+     * 전체를 다시 읽는다.
+     * <p>
+     * 전체 적재와 커밋 후 반영은 DB 를 읽는 것부터 배열에 쓰는 것까지 한 번에 하나만 실행한다. (synchronized)
+     * 동시에 실행하면 먼저 읽은 이전 값이 나중에 쓰여 다음 변경까지 스냅샷이 DB 와 달라질 수 있다.
+     * 순서대로 실행하면 나중에 실행한 쪽이 항상 더 최근에 커밋된 값을 읽는다.
+     */
+    public synchronized void reload() {
+        long target = bulkChanges.get();
+        long start = System.nanoTime();
+        List<Object[]> teams = jdbcTemplate.query(SELECT_TEAMS, this::teamRow);
+        List<Object[]> members = jdbcTemplate.query(SELECT_MEMBERS, this::memberRow);
+
+        lock.writeLock().lock();
+        try {
+            teamIds.clear();
+            teamNames.clear();
+            teamCodeById.clear();
+            usernames = new StringDictionary();
+            size = 0;
+            memberIds = new long[members.size()];
+            ages = new int[members.size()];
+            teamCodes = new int[members.size()];
+            usernameCodes = new int[members.size()];
+
+            teams.forEach(this::putTeam);
+            for (Object[] member : members) {
+                upsertMember(member);
+            }
+            rebuildTeamRows();
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        reloadedChanges = target;
+        log.info("member snapshot loaded {} members, {} teams in {} ms ({} bytes, {} MB per million rows)",
+                size, teamIds.size(), (System.nanoTime() - start) / 1_000_000,
+                memoryBytes(), String.format("%.1f", bytesPerMillionRows() / 1024 / 1024));
+    }
+
+    @EventListener
+    public void onChange(MemberTeamChangedEvent event) {
+        //트랜잭션 종료 후 다시 발행된 이벤트는 이미 받은 변경이다.
+        if (!enabled || event.isTransactionCompleted()) {
+            return;
+        }
+
+        Changes changes = currentChanges();
+        Object entity = event.getEntity();
+        if (entity == null) {
+            changes.full = true;
+        } else if (entity instanceof Member) {
+            changes.memberIds.add(((Member) entity).getId());
+        } else if (entity instanceof Team) {
+            changes.teamIds.add(((Team) entity).getId());
+        }
+
+        if (!changes.transactional) {
+            apply(changes);
+        }
+    }
+
+    /**
+     * 트랜잭션 안이면 커밋 후 한 번에 반영하도록 모아 두고, 롤백되면 버린다.
+     */
+    private Changes currentChanges() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return new Changes(false);
+        }
+        Changes changes = (Changes) TransactionSynchronizationManager.getResource(CHANGES_KEY);
+        if (changes != null) {
+            return changes;
+        }
+
+        Changes created = new Changes(true);
+        TransactionSynchronizationManager.bindResource(CHANGES_KEY, created);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                apply(created);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(CHANGES_KEY);
+            }
+        });
+        return created;
+    }
+
+    private synchronized void apply(Changes changes) {
+        if (!ready || changes.full) {
+            requestReload();
+            return;
+        }
+        try {
+            List<Object[]> teams = selectIn("select team_id, name from team where team_id in ", changes.teamIds,
+                    this::teamRow);
+            List<Object[]> members = selectIn("select member_id, username, age, team_id from member where member_id in ", changes.memberIds,
+                    this::memberRow);
+
+            //새 팀을 참조하는 회원이 있으면 그 팀도 읽는다.
+            Set<Long> unknownTeamIds = new LinkedHashSet<>();
+            lock.readLock().lock();
+            try {
+                for (Object[] member : members) {
+                    if (member[3] != null && !teamCodeById.containsKey(member[3]) && !changes.teamIds.contains(member[3])) {
+                        unknownTeamIds.add((Long) member[3]);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            teams.addAll(selectIn("select team_id, name from team where team_id in ", unknownTeamIds,
+                    this::teamRow));
+
+            lock.writeLock().lock();
+            try {
+                teams.forEach(this::putTeam);
+                Set<Long> deleted = new LinkedHashSet<>(changes.memberIds);
+                for (Object[] member : members) {
+                    deleted.remove(member[0]);
+                    upsertMember(member);
+                }
+                deleted.forEach(this::removeMember);
+                if (teamRowsStale) {
+                    rebuildTeamRows();
+                }
+                //이름이 바뀌거나 지워진 회원의 옛 이름이 쌓이면 쓰는 이름만 남긴다.
+                if (usernames.size() > 2 * size + 1024) {
+                    usernames = usernames.compact(usernameCodes, size);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (RuntimeException e) {
+            log.warn("member snapshot incremental refresh failed, reloading", e);
+            requestReload();
+        }
+    }
+
+    private void requestReload() {
+        bulkChanges.incrementAndGet();
+        scheduleReload();
+    }
+
+    //이미 예약된 다시 읽기가 시작 전이면 새로 예약하지 않는다. 시작한 뒤의 변경은 다음 다시 읽기가 반영한다.
+    private void scheduleReload() {
+        if (reloadScheduled.compareAndSet(false, true)) {
+            reloadExecutor.execute(() -> {
+                reloadScheduled.set(false);
+                if (!tryReload() && pause()) {
+                    scheduleReload();
+                }
+            });
+        }
+    }
+
+    private boolean tryReload() {
+        try {
+            reload();
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("member snapshot reload failed, retrying in {} ms", retryMillis, e);
+            return false;
+        }
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(retryMillis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reloadExecutor.shutdown();
+    }
+
+    private <T> List<T> selectIn(String sql, Collection<Long> ids, RowMapper<T> mapper) {
+        List<T> result = new ArrayList<>();
+        List<Long> list = new ArrayList<>(ids);
+        for (int from = 0; from < list.size(); from += IN_CHUNK_SIZE) {
+            List<Long> chunk = list.subList(from, Math.min(from + IN_CHUNK_SIZE, list.size()));
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            result.addAll(jdbcTemplate.query(sql + "(" + placeholders + ")", mapper, chunk.toArray()));
+        }
+        return result;
+    }
+
+    private Object[] memberRow(ResultSet rs, int rowNum) throws SQLException {
+        long teamId = rs.getLong(4);
+        return new Object[]{rs.getLong(1), rs.getString(2), rs.getInt(3), rs.wasNull() ? null : teamId};
+    }
+
+    private Object[] teamRow(ResultSet rs, int rowNum) throws SQLException {
+        return new Object[]{rs.getLong(1), rs.getString(2)};
+    }
+
+    private void putTeam(Object[] team) {
+        Long id = (Long) team[0];
+        Integer code = teamCodeById.get(id);
+        if (code == null) {
+            teamCodeById.put(id, teamIds.size());
+            teamIds.add(id);
+            teamNames.add((String) team[1]);
+            teamRowsStale = true;
+        } else {
+            teamNames.set(code, (String) team[1]);
+        }
+    }
+
+    private void upsertMember(Object[] member) {
+        long id = (Long) member[0];
+        int teamCode = member[3] == null ? -1 : teamCodeById.getOrDefault(member[3], -1);
+        int i = Arrays.binarySearch(memberIds, 0, size, id);
+        if (i < 0) {
+            i = -i - 1;
+            ensureCapacity(size + 1);
+            //시퀀스 id 는 대부분 마지막에 붙으므로 보통 옮길 것이 없다.
+            shift(i, i + 1, size - i);
+            size++;
+            if (i == size - 1 && !teamRowsStale) {
+                addTeamRow(teamCode, i);
+            } else {
+                teamRowsStale = true;
+            }
+        } else if (teamCodes[i] != teamCode) {
+            teamRowsStale = true;
+        }
+        memberIds[i] = id;
+        usernameCodes[i] = usernames.add((String) member[1]);
+        ages[i] = (Integer) member[2];
+        teamCodes[i] = teamCode;
+    }
+
+    private void removeMember(Long id) {
+        int i = Arrays.binarySearch(memberIds, 0, size, id);
+        if (i >= 0) {
+            shift(i + 1, i, size - i - 1);
+            size--;
+            teamRowsStale = true;
+        }
+    }
+
+    private void addTeamRow(int teamCode, int row) {
+        if (teamCode < 0) {
+            return;
+        }
+        int[] rows = teamRows[teamCode];
+        if (teamRowCounts[teamCode] == rows.length) {
+            rows = teamRows[teamCode] = Arrays.copyOf(rows, rows.length + (rows.length >> 1) + 16);
+        }
+        rows[teamRowCounts[teamCode]++] = row;
+    }
+
+    /**
+     * 중간 삽입/삭제로 행 위치가 밀리거나 팀이 바뀌면 전체를 다시 만든다. (O(회원 수))
+     */
+    private void rebuildTeamRows() {
+        int teams = teamIds.size();
+        int[] counts = new int[teams];
+        for (int i = 0; i < size; i++) {
+            if (teamCodes[i] >= 0) {
+                counts[teamCodes[i]]++;
+            }
+        }
+        teamRows = new int[teams][];
+        for (int code = 0; code < teams; code++) {
+            teamRows[code] = new int[counts[code]];
+        }
+        teamRowCounts = new int[teams];
+        for (int i = 0; i < size; i++) {
+            int code = teamCodes[i];
+            if (code >= 0) {
+                teamRows[code][teamRowCounts[code]++] = i;
+            }
+        }
+        teamRowsStale = false;
+    }
+
+    private void shift(int from, int to, int length) {
+        System.arraycopy(memberIds, from, memberIds, to, length);
+        System.arraycopy(ages, from, ages, to, length);
+        System.arraycopy(teamCodes, from, teamCodes, to, length);
+        System.arraycopy(usernameCodes, from, usernameCodes, to, length);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= memberIds.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, memberIds.length + (memberIds.length >> 1) + 16);
+        memberIds = Arrays.copyOf(memberIds, newCapacity);
+        ages = Arrays.copyOf(ages, newCapacity);
+        teamCodes = Arrays.copyOf(teamCodes, newCapacity);
+        usernameCodes = Arrays.copyOf(usernameCodes, newCapacity);
+    }
+
+    /**
+     * 대략적인 사용량. 컬럼 배열 + username 사전 + 팀 사전 (팀 문자열은 객체 헤더 + char 배열, HashMap 엔트리 포함)
+     */
+    public long memoryBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = (long) memberIds.length * (Long.BYTES + Integer.BYTES * 3) + usernames.memoryBytes();
+            for (int[] rows : teamRows) {
+                bytes += 16 + (long) rows.length * Integer.BYTES;
+            }
+            for (String teamName : teamNames) {
+                bytes += stringBytes(teamName) + 16 + 48 + 16;
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public double bytesPerMillionRows() {
+        return size == 0 ? 0 : memoryBytes() * 1_000_000.0 / size;
+    }
+
+    private static long stringBytes(String value) {
+        return value == null ? 0 : 40 + 2L * value.length();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static final class Changes {
+
+        private final boolean transactional;
+        private final Set<Long> memberIds = new LinkedHashSet<>();
+        private final Set<Long> teamIds = new LinkedHashSet<>();
+        private boolean full;
+
+        private Changes(boolean transactional) {
+            this.transactional = transactional;
+        }
+    }
+}
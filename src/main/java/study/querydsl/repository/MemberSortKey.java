@@ -0,0 +1,72 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.ComparableExpressionBase;
+import com.querydsl.core.types.dsl.Expressions;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.util.function.Function;
+
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * 키셋(seek) 페이징에서 허용하는 정렬 키.
+ * 모든 키는 member_id 를 보조 키로 사용해 (정렬 키, member_id) 순서가 항상 유일하다.
+ */
+public enum MemberSortKey {
+
+    ID(member.id, MemberTeamDto::getMemberId, Long::valueOf),
+    USERNAME(member.username, MemberTeamDto::getUsername, Function.identity()),
+    AGE(member.age, MemberTeamDto::getAge, Integer::valueOf);
+
+    private final ComparableExpressionBase<?> path;
+    private final Function<MemberTeamDto, Object> extractor;
+    private final Function<String, Object> parser;
+
+    MemberSortKey(ComparableExpressionBase<?> path,
+                  Function<MemberTeamDto, ?> extractor,
+                  Function<String, ?> parser) {
+        this.path = path;
+        this.extractor = extractor::apply;
+        this.parser = parser::apply;
+    }
+
+    Object valueOf(MemberTeamDto dto) {
+        return extractor.apply(dto);
+    }
+
+    Object parse(String value) {
+        return parser.apply(value);
+    }
+
+    /**
+     * (정렬 키, member_id) 가 커서 위치보다 뒤(forward) 또는 앞에 있는 행만 남기는 조건.
+     */
+    Predicate seek(Object value, Long memberId, boolean forward) {
+        Ops op = forward ? Ops.GT : Ops.LT;
+        if (this == ID) {
+            return Expressions.predicate(op, member.id, Expressions.constant(memberId));
+        }
+        return Expressions.predicate(op, path, Expressions.constant(value))
+                .or(Expressions.predicate(Ops.EQ, path, Expressions.constant(value))
+                        .and(Expressions.predicate(op, member.id, Expressions.constant(memberId))));
+    }
+
+    /**
+     * username 정렬 시 null 은 비교가 불가능하므로 결과에서 제외한다.
+     */
+    Predicate notNull() {
+        return this == USERNAME ? member.username.isNotNull() : null;
+    }
+
+    OrderSpecifier<?>[] orderBy(boolean forward) {
+        if (this == ID) {
+            return new OrderSpecifier<?>[]{forward ? member.id.asc() : member.id.desc()};
+        }
+        return new OrderSpecifier<?>[]{
+                forward ? path.asc() : path.desc(),
+                forward ? member.id.asc() : member.id.desc()};
+    }
+}
@@ -0,0 +1,43 @@
+package study.querydsl.repository;
+
+import org.springframework.beans.factory.ObjectProvider;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * Member/Team 엔티티 리스너. 변경된 엔티티의 값을 {@link MemberTeamViewRepository} 에 넘겨
+ * 같은 트랜잭션의 커밋 직전에 member_team_view 의 해당 행을 갱신한다.
+ * (Hibernate 가 Spring 빈으로 만든다)
+ */
+public class MemberTeamViewListener {
+
+    //리스너는 EntityManagerFactory 를 만들 때 생성되므로 나중에 꺼낸다. (순환 참조)
+    private final ObjectProvider<MemberTeamViewRepository> viewRepository;
+
+    public MemberTeamViewListener(ObjectProvider<MemberTeamViewRepository> viewRepository) {
+        this.viewRepository = viewRepository;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void saved(Object entity) {
+        if (entity instanceof Member) {
+            viewRepository.getObject().saveMember((Member) entity);
+        } else if (entity instanceof Team) {
+            viewRepository.getObject().saveTeam((Team) entity);
+        }
+    }
+
+    @PostRemove
+    public void removed(Object entity) {
+        if (entity instanceof Member) {
+            viewRepository.getObject().removeMember((Member) entity);
+        } else if (entity instanceof Team) {
+            viewRepository.getObject().removeTeam((Team) entity);
+        }
+    }
+}
@@ -0,0 +1,430 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Hibernate;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.support.MemberTeamChangedEvent;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import static org.springframework.util.StringUtils.isEmpty;
+import static study.querydsl.entity.QMemberTeamView.memberTeamView;
+
+/**
+ * member_team_view 읽기 테이블 관리와 검색. (querydsl.member-team-view.enabled=true 일 때 search, searchPageComplex 가 사용한다)
+ * <p>
+ * 엔티티 단위 변경은 {@link MemberTeamViewListener} 가 트랜잭션마다 모아 두었다가 Hibernate 가 커밋 직전 flush 한 뒤
+ * 같은 커넥션으로 해당 행만 고친다. (회원 delete batch, insert batch, 팀 update batch. {@link MemberUsernameIndex} 와 같다)
+ * 모아 둔 행은 커밋할 때까지 메모리에 있다.
+ * 벌크 update/delete 와 JDBC 적재는 어떤 행이 바뀌었는지 모르므로 커밋 후 별도 스레드에서 전체를 다시 만들고,
+ * 다시 만들 때까지는 검색을 맡지 않는다. (join 쿼리로 검색한다) 연달아 들어온 벌크 변경은 한 번에 다시 만든다.
+ * 다시 만드는 동안에는 엔티티 단위 반영이 커밋 직전에서 기다린다. (다시 만드는 트랜잭션이 커밋되지 않은 행과 겹치지 않도록)
+ * 다시 만들기가 실패하면 로그를 남기고 retry-millis 뒤에 다시 시도한다. 인스턴스 하나에서만 맞다.
+ * <p>
+ * 결과와 순서는 {@link MemberSearchQueries} 와 같다.
+ */
+@Slf4j
+@Repository
+public class MemberTeamViewRepository {
+
+    private static final String DELETE_MEMBER = "delete from member_team_view where member_id = ?";
+    //팀 이름을 모르면(초기화되지 않은 프록시) team 테이블에서 읽는다.
+    private static final String INSERT_MEMBER = "insert into member_team_view (member_id, username, age, team_id, team_name)"
+            + " values (?, ?, ?, ?, coalesce(?, (select t.name from team t where t.team_id = ?)))";
+    private static final String UPDATE_TEAM = "update member_team_view set team_name = ? where team_id = ?";
+    private static final String REMOVE_TEAM = "update member_team_view set team_id = null, team_name = null where team_id = ?";
+    private static final String DELETE_ALL = "delete from member_team_view";
+    private static final String INSERT_ALL = "insert into member_team_view (member_id, username, age, team_id, team_name)"
+            + " select m.member_id, m.username, m.age, t.team_id, t.name from member m left join team t on t.team_id = m.team_id";
+
+    private static final Object REBUILD_KEY = new Object();
+
+    private final EntityManagerFactory emf;
+    private final JPAQueryFactory queryFactory;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MemberUsernameIndex usernameIndex;
+    private final boolean enabled;
+    private final ThreadPoolTaskExecutor rebuildExecutor;
+
+    //세션(트랜잭션)별로 반영할 변경
+    private final Map<SharedSessionContractImplementor, PendingRows> pending = new ConcurrentHashMap<>();
+    //엔티티 단위 반영(커밋 직전 ~ 트랜잭션 종료)은 read, 전체 다시 만들기는 write
+    private final ReentrantReadWriteLock rebuildLock = new ReentrantReadWriteLock();
+    private final Set<SharedSessionContractImplementor> locked = ConcurrentHashMap.newKeySet();
+    private final long retryMillis;
+
+    //벌크 변경 수와 마지막으로 다시 만들 때 반영된 벌크 변경 수. 같아야 검색을 맡는다.
+    private final AtomicLong bulkChanges = new AtomicLong();
+    private volatile long rebuiltChanges = -1;
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+
+    public MemberTeamViewRepository(EntityManagerFactory emf,
+                                    JPAQueryFactory queryFactory,
+                                    JdbcTemplate jdbcTemplate,
+                                    PlatformTransactionManager transactionManager,
+                                    MemberUsernameIndex usernameIndex,
+                                    @Value("${querydsl.member-team-view.enabled:false}") boolean enabled,
+                                    @Value("${querydsl.member-team-view.retry-millis:1000}") long retryMillis) {
+        this.emf = emf;
+        this.queryFactory = queryFactory;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.usernameIndex = usernameIndex;
+        this.enabled = enabled;
+        this.retryMillis = retryMillis;
+
+        this.rebuildExecutor = new ThreadPoolTaskExecutor();
+        this.rebuildExecutor.setCorePoolSize(1);
+        this.rebuildExecutor.setMaxPoolSize(1);
+        this.rebuildExecutor.setThreadNamePrefix("member-team-view-");
+        this.rebuildExecutor.initialize();
+    }
+
+    /**
+     * 활성화되어 있고 다시 만들 벌크 변경이 없으며 쓰기 트랜잭션 밖일 때만 검색을 맡는다.
+     * (쓰기 트랜잭션에서 flush 되지 않은 Member 변경은 member_team_view 조회 전에 flush 되지 않는다)
+     */
+    public boolean canServe() {
+        return enabled && rebuiltChanges == bulkChanges.get()
+                && !(TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+    }
+
+    public List<MemberTeamDto> search(MemberSearchCondition condition) {
+        return contentQuery(condition).fetch();
+    }
+
+    public List<MemberTeamDto> search(MemberSearchCondition condition, long offset, int limit) {
+        return contentQuery(condition)
+                .offset(offset)
+                .limit(limit)
+                .fetch();
+    }
+
+    public Page<MemberTeamDto> searchPage(MemberSearchCondition condition, Pageable pageable) {
+        List<MemberTeamDto> content = search(condition, pageable.getOffset(), pageable.getPageSize());
+
+        return PageableExecutionUtils.getPage(content, pageable, () -> queryFactory
+                .select(memberTeamView.count())
+                .from(memberTeamView)
+                .where(where(condition))
+                .fetchOne());
+    }
+
+    private JPAQuery<MemberTeamDto> contentQuery(MemberSearchCondition condition) {
+        return queryFactory
+                .select(new QMemberTeamDto(
+                        memberTeamView.memberId,
+                        memberTeamView.username,
+                        memberTeamView.age,
+                        memberTeamView.teamId,
+                        memberTeamView.teamName))
+                .from(memberTeamView)
+                .where(where(condition))
+                .orderBy(memberTeamView.memberId.asc());
+    }
+
+    private BooleanExpression[] where(MemberSearchCondition condition) {
+        return new BooleanExpression[]{
+                isEmpty(condition.getUsername()) ? null : memberTeamView.username.eq(condition.getUsername()),
+                isEmpty(condition.getTeamName()) ? null : memberTeamView.teamName.eq(condition.getTeamName()),
+                condition.getAgeGoe() == null ? null : memberTeamView.age.goe(condition.getAgeGoe()),
+                condition.getAgeLoe() == null ? null : memberTeamView.age.loe(condition.getAgeLoe()),
+                isEmpty(condition.getUsernamePrefix()) ? null : memberTeamView.username.goe(condition.getUsernamePrefix())
+                        .and(memberTeamView.username.lt(MemberUsernameIndex.upperBound(condition.getUsernamePrefix()))),
+                isEmpty(condition.getUsernameContains()) ? null : usernameContains(condition.getUsernameContains())};
+    }
+
+    //member_id 가 같으므로 회원 n-gram 색인을 그대로 쓴다.
+    private BooleanExpression usernameContains(String value) {
+        BooleanExpression like = memberTeamView.username.like(MemberUsernameIndex.containsPattern(value), '!');
+        if (!usernameIndex.canServe()) {
+            return like;
+        }
+        if (MemberUsernameIndex.isShort(value)) {
+            return MemberUsernameIndex.hasGramBetween(memberTeamView.memberId,
+                    Expressions.constant(value), Expressions.constant(MemberUsernameIndex.upperBound(value)));
+        }
+        List<String> grams = MemberUsernameIndex.queryGrams(value);
+        return MemberUsernameIndex.hasAllGrams(memberTeamView.memberId, Expressions.constant(grams), Expressions.constant((long) grams.size()))
+                .and(like);
+    }
+
+    void saveMember(Member member) {
+        if (!enabled) {
+            return;
+        }
+        Team team = member.getTeam();
+        Long teamId = team == null ? null : team.getId();
+        String teamName = team != null && Hibernate.isInitialized(team) ? team.getName() : null;
+        change(rows -> rows.members.put(member.getId(), new Object[]{member.getUsername(), member.getAge(), teamId, teamName}));
+    }
+
+    void removeMember(Member member) {
+        if (enabled) {
+            change(rows -> rows.members.put(member.getId(), null));
+        }
+    }
+
+    /**
+     * 팀 이름 변경. 새 팀이면 먼저 저장된 소속 회원 행의 팀 이름을 채운다.
+     */
+    void saveTeam(Team team) {
+        if (enabled) {
+            change(rows -> rows.teams.put(team.getId(), team.getName()));
+        }
+    }
+
+    void removeTeam(Team team) {
+        if (enabled) {
+            change(rows -> rows.teams.put(team.getId(), null));
+        }
+    }
+
+    /**
+     * 트랜잭션 안이면 세션에 모아 두고, 밖이면 바로 반영한다.
+     */
+    private void change(Consumer<PendingRows> change) {
+        EntityManager current = EntityManagerFactoryUtils.getTransactionalEntityManager(emf);
+        if (current == null) {
+            PendingRows rows = new PendingRows();
+            change.accept(rows);
+            rebuildLock.readLock().lock();
+            try {
+                jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                    apply(connection, rows);
+                    return null;
+                });
+            } finally {
+                rebuildLock.readLock().unlock();
+            }
+            return;
+        }
+
+        SessionImplementor session = current.unwrap(SessionImplementor.class);
+        PendingRows rows = pending.get(session);
+        if (rows == null) {
+            rows = new PendingRows();
+            pending.put(session, rows);
+            session.getActionQueue().registerProcess((BeforeTransactionCompletionProcess) this::flush);
+            //롤백되면 버린다.
+            session.getActionQueue().registerProcess((AfterTransactionCompletionProcess) (success, s) -> {
+                pending.remove(s);
+                if (locked.remove(s)) {
+                    rebuildLock.readLock().unlock();
+                }
+            });
+        }
+        change.accept(rows);
+    }
+
+    /**
+     * 커밋 직전(flush 후) 모아 둔 변경을 같은 커넥션으로 반영한다. 트랜잭션이 끝날 때까지 다시 만들기를 막는다.
+     */
+    private void flush(SessionImplementor session) {
+        PendingRows rows = pending.remove(session);
+        if (rows == null) {
+            return;
+        }
+        rebuildLock.readLock().lock();
+        locked.add(session);
+        session.doWork(connection -> apply(connection, rows));
+    }
+
+    //회원 행을 지우고 다시 넣은 뒤 팀 이름을 고친다. (같은 트랜잭션에서 바뀐 팀 이름이 회원 행에 남지 않도록)
+    private void apply(Connection connection, PendingRows rows) throws SQLException {
+        if (!rows.members.isEmpty()) {
+            try (PreparedStatement delete = connection.prepareStatement(DELETE_MEMBER)) {
+                for (Long memberId : rows.members.keySet()) {
+                    delete.setLong(1, memberId);
+                    delete.addBatch();
+                }
+                delete.executeBatch();
+            }
+            try (PreparedStatement insert = connection.prepareStatement(INSERT_MEMBER)) {
+                int count = 0;
+                for (Map.Entry<Long, Object[]> member : rows.members.entrySet()) {
+                    Object[] values = member.getValue();
+                    if (values == null) {
+                        continue;
+                    }
+                    insert.setLong(1, member.getKey());
+                    insert.setObject(2, values[0]);
+                    insert.setObject(3, values[1]);
+                    insert.setObject(4, values[2]);
+                    insert.setObject(5, values[3]);
+                    insert.setObject(6, values[2]);
+                    insert.addBatch();
+                    count++;
+                }
+                if (count > 0) {
+                    insert.executeBatch();
+                }
+            }
+        }
+        if (!rows.teams.isEmpty()) {
+            try (PreparedStatement update = connection.prepareStatement(UPDATE_TEAM);
+                 PreparedStatement remove = connection.prepareStatement(REMOVE_TEAM)) {
+                int updates = 0;
+                int removes = 0;
+                for (Map.Entry<Long, String> team : rows.teams.entrySet()) {
+                    if (team.getValue() == null) {
+                        remove.setLong(1, team.getKey());
+                        remove.addBatch();
+                        removes++;
+                    } else {
+                        update.setString(1, team.getValue());
+                        update.setLong(2, team.getKey());
+                        update.addBatch();
+                        updates++;
+                    }
+                }
+                if (updates > 0) {
+                    update.executeBatch();
+                }
+                if (removes > 0) {
+                    remove.executeBatch();
+                }
+            }
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled && !tryRebuild()) {
+            scheduleRebuild();
+        }
+    }
+
+    @EventListener
+    public void onChange(MemberTeamChangedEvent event) {
+        //엔티티 단위 변경은 리스너가 반영했고, 트랜잭션 종료 후 이벤트는 이미 받은 변경이다.
+        if (!enabled || event.getEntity() != null || event.isTransactionCompleted()) {
+            return;
+        }
+        bulkChanges.incrementAndGet();
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            scheduleRebuild();
+            return;
+        }
+        if (TransactionSynchronizationManager.hasResource(REBUILD_KEY)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(REBUILD_KEY, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(REBUILD_KEY);
+                scheduleRebuild();
+            }
+        });
+    }
+
+    private void scheduleRebuild() {
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            rebuildExecutor.execute(() -> {
+                rebuildScheduled.set(false);
+                if (!tryRebuild() && pause()) {
+                    scheduleRebuild();
+                }
+            });
+        }
+    }
+
+    //실패한 채로 두면 rebuiltChanges 가 bulkChanges 를 따라가지 못해 검색을 계속 맡지 못한다.
+    private boolean tryRebuild() {
+        try {
+            rebuild();
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("member_team_view rebuild failed, retrying in {} ms", retryMillis, e);
+            return false;
+        }
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(retryMillis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * member, team 을 join 해 전체를 다시 만든다. 커밋 전까지 다른 트랜잭션은 이전 행을 읽는다.
+     */
+    public synchronized void rebuild() {
+        long target = bulkChanges.get();
+        long start = System.nanoTime();
+        Integer rows;
+        rebuildLock.writeLock().lock();
+        try {
+            rows = transactionTemplate.execute(status -> {
+                jdbcTemplate.update(DELETE_ALL);
+                return jdbcTemplate.update(INSERT_ALL);
+            });
+        } finally {
+            rebuildLock.writeLock().unlock();
+        }
+        rebuiltChanges = target;
+        log.info("member_team_view rebuilt {} rows in {} ms", rows, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdown();
+    }
+
+    private static class PendingRows {
+
+        //member_id -> {username, age, team_id, team_name}, 삭제는 null
+        private final Map<Long, Object[]> members = new LinkedHashMap<>();
+        //team_id -> 팀 이름, 삭제는 null
+        private final Map<Long, String> teams = new LinkedHashMap<>();
+    }
+}
@@ -1,31 +1,44 @@
 package study.querydsl.repository;
 
-import com.querydsl.core.types.dsl.BooleanExpression;
 import com.querydsl.jpa.JPQLQuery;
 import com.querydsl.jpa.impl.JPAQuery;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import study.querydsl.dto.MemberDto;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.dto.QMemberTeamDto;
 import study.querydsl.entity.Member;
+import study.querydsl.repository.support.FetchPlan;
+import study.querydsl.repository.support.MemberSearchCache;
 import study.querydsl.repository.support.Querydsl4RepositorySupport;
+import study.querydsl.repository.support.SortPolicy;
 
 import java.util.List;
 
-import static org.springframework.util.StringUtils.isEmpty;
 import static study.querydsl.entity.QMember.member;
 import static study.querydsl.entity.QTeam.team;
 
 
 @Repository
+@Transactional(readOnly = true)
 public class MemberTestRepository extends Querydsl4RepositorySupport {
 
-    public MemberTestRepository() {
-        super(Member.class);
+    //idx_member_username, idx_member_age 는 PK 를 포함하므로 (키, member_id) 순서로 읽는다.
+    private static final SortPolicy SORT_POLICY = SortPolicy.tiebreaker("id", member.id)
+            .allow("username", member.username)
+            .allow("age", member.age);
+
+    private final MemberSearchCache searchCache;
+    private final MemberSearchPredicates predicates;
+
+    public MemberTestRepository(MemberSearchCache searchCache, MemberSearchPredicates predicates) {
+        super(Member.class, SORT_POLICY);
+        this.searchCache = searchCache;
+        this.predicates = predicates;
     }
 
     public List<Member> basicSelect() {
@@ -41,22 +54,17 @@ public class MemberTestRepository extends Querydsl4RepositorySupport {
 
     public Page<Member> searchPageByApplyPage(MemberSearchCondition condition, Pageable pageable) {
 
-        JPAQuery<Member> query = selectFrom(member)
-                .leftJoin(member.team, team)
-                .where(usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageBetween(condition.getAgeGoe(), condition.getAgeLoe())
-                );
+        JPAQuery<Member> query = predicates.applyTo(selectFrom(member, FetchPlan.join(member.team, team)), condition);
 
-        List<Member> content = getQuerydsl().applyPagination(pageable, query).fetch();
+        List<Member> content = timed(paginate(pageable, query)).fetch();
 
-        return PageableExecutionUtils.getPage(content, pageable, query::fetchCount);
+        return PageableExecutionUtils.getPage(content, pageable, () -> timed(countQuery(query)).fetchOne());
     }
 
     public Page<MemberTeamDto> applyPagination1(MemberSearchCondition condition, Pageable pageable) {
 
-        return applyPagination(pageable, query ->
-                query
+        return searchCache.get("applyPagination1", condition, pageable, () -> applyPagination(pageable, condition.normalize(), query ->
+                predicates.applyTo(query
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
@@ -65,51 +73,12 @@ public class MemberTestRepository extends Querydsl4RepositorySupport {
                         team.name.as("teamName")
                 ))
                 .from(member)
-                .leftJoin(member.team, team)
-                .where(usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                ));
+                .leftJoin(member.team, team), condition)));
 
     }
 
     public Page<Member> applyPagination2(MemberSearchCondition condition, Pageable pageable) {
-        return applyPagination(pageable,
-                contentQuery -> contentQuery
-                        .selectFrom(member)
-                        .leftJoin(member.team, team)
-                        .where(usernameEq(condition.getUsername()),
-                                teamNameEq(condition.getTeamName()),
-                                ageGoe(condition.getAgeGoe()),
-                                ageLoe(condition.getAgeLoe())
-                        ),
-                countQuery -> countQuery
-                        .selectFrom(member)
-                        .leftJoin(member.team, team)
-                        .where(usernameEq(condition.getUsername()),
-                                teamNameEq(condition.getTeamName()),
-                                ageGoe(condition.getAgeGoe()),
-                                ageLoe(condition.getAgeLoe())));
-    }
-
-    private BooleanExpression ageBetween(int ageLoe, int ageGoe) {
-        return ageGoe(ageGoe).and(ageLoe(ageLoe));
-    }
-
-    private BooleanExpression ageLoe(Integer ageLoe) {
-        return ageLoe != null ? member.age.loe(ageLoe) : null;
-    }
-
-    private BooleanExpression ageGoe(Integer ageGoe) {
-        return ageGoe != null ? member.age.goe(ageGoe) : null;
-    }
-
-    private BooleanExpression teamNameEq(String teamName) {
-        return isEmpty(teamName) ? null : team.name.eq(teamName);
-    }
-
-    private BooleanExpression usernameEq(String username) {
-        return isEmpty(username) ? null : member.username.eq(username);
+        return applyPagination(pageable, condition.normalize(), FetchPlan.join(member.team, team),
+                contentQuery -> predicates.applyTo(contentQuery.selectFrom(member), condition));
     }
 }
@@ -0,0 +1,422 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.types.dsl.NumberExpression;
+import com.querydsl.jpa.JPAExpressions;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.MemberUsernameGram;
+import study.querydsl.repository.support.MemberTeamChangedEvent;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static study.querydsl.entity.QMemberUsernameGram.memberUsernameGram;
+
+/**
+ * 회원 이름 부분 검색(contains)용 n-gram 색인(member_username_gram) 관리. (querydsl.username-index.enabled, 기본 true)
+ * <p>
+ * 이름의 위치마다 3글자를 저장하고 끝의 두 위치는 남은 1~2글자를 저장한다.
+ * 3글자 이상 검색어는 그 3-gram 을 모두 가진 회원을 찾은 뒤 like 로 확인하고,
+ * 1~2글자 검색어는 검색어로 시작하는 gram 을 가진 회원이 곧 답이다. 어느 쪽이든 member 테이블을 훑지 않는다.
+ * <p>
+ * 엔티티 단위 변경은 트랜잭션마다 모아 두었다가 Hibernate 가 커밋 직전 flush 한 뒤 같은 커넥션으로 한 번에 반영한다.
+ * (회원마다 문장을 실행하지 않으므로 insert/update JDBC batch 가 유지된다) 이름이 바뀌지 않은 update 는 건너뛴다.
+ * 벌크 변경은 어떤 행이 바뀌었는지 모르므로 커밋 후 별도 스레드에서 전체를 다시 만들고, 그동안과 쓰기 트랜잭션 안에서는
+ * 색인을 쓰지 않는다. (like '%검색어%' 로 훑는다)
+ * 다시 만드는 동안에는 엔티티 단위 반영이 커밋 직전에서 기다리고, 실패하면 로그를 남기고 retry-millis 뒤에 다시 시도한다.
+ * ({@link MemberTeamViewRepository} 와 같다)
+ */
+@Slf4j
+@Repository
+public class MemberUsernameIndex implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String DELETE_MEMBER = "delete from member_username_gram where member_id = ?";
+    private static final String INSERT_GRAM = "insert into member_username_gram (gram, member_id) values (?, ?)";
+    private static final String DELETE_ALL = "delete from member_username_gram";
+    private static final String SELECT_MEMBERS = "select member_id, username from member";
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    private static final Object REBUILD_KEY = new Object();
+
+    private final EntityManagerFactory emf;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final ThreadPoolTaskExecutor rebuildExecutor;
+
+    //세션(트랜잭션)별로 반영할 변경. member_id -> 새 이름 (삭제는 null)
+    private final Map<SharedSessionContractImplementor, Map<Long, String>> pending = new ConcurrentHashMap<>();
+    //엔티티 단위 반영(커밋 직전 ~ 트랜잭션 종료)은 read, 전체 다시 만들기는 write
+    private final ReentrantReadWriteLock rebuildLock = new ReentrantReadWriteLock();
+    private final Set<SharedSessionContractImplementor> locked = ConcurrentHashMap.newKeySet();
+    private final long retryMillis;
+
+    //벌크 변경 수와 마지막으로 다시 만들 때 반영된 벌크 변경 수. 같아야 검색에 쓴다.
+    private final AtomicLong bulkChanges = new AtomicLong();
+    private volatile long rebuiltChanges = -1;
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+
+    public MemberUsernameIndex(EntityManagerFactory emf,
+                               JdbcTemplate jdbcTemplate,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${querydsl.username-index.enabled:true}") boolean enabled,
+                               @Value("${querydsl.username-index.retry-millis:1000}") long retryMillis) {
+        this.emf = emf;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.retryMillis = retryMillis;
+
+        this.rebuildExecutor = new ThreadPoolTaskExecutor();
+        this.rebuildExecutor.setCorePoolSize(1);
+        this.rebuildExecutor.setMaxPoolSize(1);
+        this.rebuildExecutor.setThreadNamePrefix("member-username-index-");
+        this.rebuildExecutor.initialize();
+    }
+
+    @PostConstruct
+    public void register() {
+        if (!enabled) {
+            return;
+        }
+        EventListenerRegistry registry = emf.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+    }
+
+    /**
+     * 활성화되어 있고 다시 만들 벌크 변경이 없으며 쓰기 트랜잭션 밖일 때만 검색에 쓴다.
+     * (쓰기 트랜잭션의 변경은 커밋 직전에 색인에 반영된다)
+     */
+    public boolean canServe() {
+        return enabled && rebuiltChanges == bulkChanges.get()
+                && !(TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+    }
+
+    /**
+     * username 을 색인하는 gram. 위치마다 최대 3글자, 중복 제거
+     */
+    static Set<String> grams(String username) {
+        Set<String> grams = new LinkedHashSet<>();
+        if (username == null) {
+            return grams;
+        }
+        for (int i = 0; i < username.length(); i++) {
+            grams.add(username.substring(i, Math.min(i + MemberUsernameGram.GRAM_LENGTH, username.length())));
+        }
+        return grams;
+    }
+
+    /**
+     * 3글자 이상 검색어가 포함되려면 모두 있어야 하는 3-gram
+     */
+    static List<String> queryGrams(String value) {
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + MemberUsernameGram.GRAM_LENGTH <= value.length(); i++) {
+            grams.add(value.substring(i, i + MemberUsernameGram.GRAM_LENGTH));
+        }
+        return new ArrayList<>(grams);
+    }
+
+    static boolean isShort(String value) {
+        return value.length() < MemberUsernameGram.GRAM_LENGTH;
+    }
+
+    /**
+     * value 로 시작하는 문자열의 (제외) 상한. [value, upperBound) 범위 조건은 인덱스 범위 검색이 된다.
+     */
+    static String upperBound(String value) {
+        return value + Character.MAX_VALUE;
+    }
+
+    /**
+     * like '%value%' 패턴. 와일드카드는 '!' 로 이스케이프한다.
+     */
+    static String containsPattern(String value) {
+        StringBuilder pattern = new StringBuilder(value.length() + 2).append('%');
+        for (char c : value.toCharArray()) {
+            if (c == '%' || c == '_' || c == '!') {
+                pattern.append('!');
+            }
+            pattern.append(c);
+        }
+        return pattern.append('%').toString();
+    }
+
+    /**
+     * grams 를 모두 가진 회원. (이름에 포함되었는지는 like 로 다시 확인해야 한다)
+     */
+    static BooleanExpression hasAllGrams(NumberExpression<Long> memberId, Expression<?> grams, Expression<Long> gramCount) {
+        return memberId.in(JPAExpressions
+                .select(memberUsernameGram.memberId)
+                .from(memberUsernameGram)
+                .where(Expressions.booleanTemplate("{0} in {1}", memberUsernameGram.gram, grams))
+                .groupBy(memberUsernameGram.memberId)
+                .having(memberUsernameGram.gram.countDistinct().eq(gramCount)));
+    }
+
+    /**
+     * [from, to) 범위의 gram 을 가진 회원. 1~2글자 검색어는 이 조건만으로 정확하다.
+     */
+    static BooleanExpression hasGramBetween(NumberExpression<Long> memberId, Expression<String> from, Expression<String> to) {
+        return memberId.in(JPAExpressions
+                .select(memberUsernameGram.memberId)
+                .from(memberUsernameGram)
+                .where(memberUsernameGram.gram.goe(from), memberUsernameGram.gram.lt(to)));
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Member) {
+            changed(event.getSession(), (Long) event.getId(), ((Member) event.getEntity()).getUsername());
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (!(event.getEntity() instanceof Member)) {
+            return;
+        }
+        //이전 상태를 모르면(준영속 엔티티 update) 바뀐 것으로 본다.
+        int username = event.getPersister().getEntityMetamodel().getPropertyIndex("username");
+        if (event.getOldState() != null && event.getDirtyProperties() != null
+                && Arrays.stream(event.getDirtyProperties()).noneMatch(i -> i == username)) {
+            return;
+        }
+        changed(event.getSession(), (Long) event.getId(), ((Member) event.getEntity()).getUsername());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof Member) {
+            changed(event.getSession(), (Long) event.getId(), null);
+        }
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+
+    //Hibernate 5.4 에서 아직 추상 메서드라 구현해야 한다.
+    @Deprecated
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return requiresPostCommitHandling(persister);
+    }
+
+    private void changed(EventSource session, Long memberId, String username) {
+        Map<Long, String> changes = pending.get(session);
+        if (changes == null) {
+            changes = new LinkedHashMap<>();
+            pending.put(session, changes);
+            session.getActionQueue().registerProcess((BeforeTransactionCompletionProcess) this::flush);
+            //롤백되면 버린다.
+            session.getActionQueue().registerProcess((AfterTransactionCompletionProcess) (success, s) -> {
+                pending.remove(s);
+                if (locked.remove(s)) {
+                    rebuildLock.readLock().unlock();
+                }
+            });
+        }
+        changes.put(memberId, username);
+    }
+
+    /**
+     * 커밋 직전(flush 후) 모아 둔 변경을 같은 커넥션으로 반영한다. 삭제 batch 1번, insert batch 1번
+     * 트랜잭션이 끝날 때까지 다시 만들기를 막는다.
+     */
+    private void flush(SessionImplementor session) {
+        Map<Long, String> changes = pending.remove(session);
+        if (changes == null || changes.isEmpty()) {
+            return;
+        }
+        rebuildLock.readLock().lock();
+        locked.add(session);
+        session.doWork(connection -> {
+            try (PreparedStatement delete = connection.prepareStatement(DELETE_MEMBER)) {
+                for (Long memberId : changes.keySet()) {
+                    delete.setLong(1, memberId);
+                    delete.addBatch();
+                }
+                delete.executeBatch();
+            }
+            try (PreparedStatement insert = connection.prepareStatement(INSERT_GRAM)) {
+                int rows = 0;
+                for (Map.Entry<Long, String> change : changes.entrySet()) {
+                    for (String gram : grams(change.getValue())) {
+                        insert.setString(1, gram);
+                        insert.setLong(2, change.getKey());
+                        insert.addBatch();
+                        rows++;
+                    }
+                }
+                if (rows > 0) {
+                    insert.executeBatch();
+                }
+            }
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled && !tryRebuild()) {
+            scheduleRebuild();
+        }
+    }
+
+    /**
+     * Member 벌크 변경 뒤에 색인 전체를 다시 만든다. (member_username_gram 을 모두 지우고 회원 수 x gram 수만큼 다시 넣는다)
+     * 벌크 문장이 username 을 바꾸는지 모르므로 나이만 바꾸는 벌크 update 도 전체를 다시 만든다.
+     * 그동안 이름 검색은 like 로 훑으므로 벌크 변경이 잦으면 색인을 끄는 편(querydsl.username-index.enabled=false)이 낫다.
+     */
+    @EventListener
+    public void onChange(MemberTeamChangedEvent event) {
+        //엔티티 단위 변경은 리스너가 반영한다. 팀 변경은 회원 이름과 무관하다.
+        if (!enabled || event.getEntity() != null || event.isTransactionCompleted() || event.getEntityType() != Member.class) {
+            return;
+        }
+        bulkChanges.incrementAndGet();
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            scheduleRebuild();
+            return;
+        }
+        if (TransactionSynchronizationManager.hasResource(REBUILD_KEY)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(REBUILD_KEY, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(REBUILD_KEY);
+                scheduleRebuild();
+            }
+        });
+    }
+
+    private void scheduleRebuild() {
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            rebuildExecutor.execute(() -> {
+                rebuildScheduled.set(false);
+                if (!tryRebuild() && pause()) {
+                    scheduleRebuild();
+                }
+            });
+        }
+    }
+
+    //실패한 채로 두면 rebuiltChanges 가 bulkChanges 를 따라가지 못해 계속 like 로 훑는다.
+    private boolean tryRebuild() {
+        try {
+            rebuild();
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("member_username_gram rebuild failed, retrying in {} ms", retryMillis, e);
+            return false;
+        }
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(retryMillis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * member 를 읽어 전체를 다시 만든다. 커밋 전까지 다른 트랜잭션은 이전 색인을 읽는다.
+     */
+    public synchronized void rebuild() {
+        long target = bulkChanges.get();
+        long start = System.nanoTime();
+        Long rows;
+        rebuildLock.writeLock().lock();
+        try {
+            rows = transactionTemplate.execute(status -> {
+                jdbcTemplate.update(DELETE_ALL);
+                List<Object[]> batch = new ArrayList<>(REBUILD_BATCH_SIZE);
+                long[] inserted = new long[1];
+                jdbcTemplate.query(SELECT_MEMBERS, rs -> {
+                    long memberId = rs.getLong(1);
+                    for (String gram : grams(rs.getString(2))) {
+                        batch.add(new Object[]{gram, memberId});
+                    }
+                    if (batch.size() >= REBUILD_BATCH_SIZE) {
+                        inserted[0] += insert(batch);
+                    }
+                });
+                return inserted[0] + insert(batch);
+            });
+        } finally {
+            rebuildLock.writeLock().unlock();
+        }
+        rebuiltChanges = target;
+        log.info("member_username_gram rebuilt {} rows in {} ms", rows, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private int insert(List<Object[]> batch) {
+        int size = batch.size();
+        if (size > 0) {
+            jdbcTemplate.batchUpdate(INSERT_GRAM, batch);
+            batch.clear();
+        }
+        return size;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdown();
+    }
+}
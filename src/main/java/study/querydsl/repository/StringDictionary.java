@@ -0,0 +1,188 @@
+package study.querydsl.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 문자열 <-> 코드 사전. 문자열을 String 객체 대신 하나의 UTF-8 byte 배열에 이어 붙여 저장한다.
+ * (회원 이름처럼 대부분 서로 다른 값이면 String 객체 헤더와 HashMap 엔트리가 값보다 커진다)
+ * <p>
+ * 코드는 추가 순서대로 0 부터 매기고 지우지 않는다. null 도 하나의 값이다.
+ * 더 이상 쓰지 않는 값은 {@link #compact(int[], int)} 로 쓰는 값만 새 사전에 옮겨 버린다.
+ * 동기화하지 않으므로 호출하는 쪽에서 잠가야 한다.
+ */
+class StringDictionary {
+
+    private byte[] bytes = new byte[1024];
+    private int byteSize;
+    //code -> 시작 위치. code 의 길이는 offsets[code + 1] - offsets[code]
+    private int[] offsets = new int[65];
+    private int size;
+    private int nullCode = -1;
+
+    //open addressing 해시 테이블. 값은 code + 1, 0 은 빈 칸
+    private int[] slots = new int[128];
+
+    /**
+     * 없으면 -1
+     */
+    int find(String value) {
+        if (value == null) {
+            return nullCode;
+        }
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        int mask = slots.length - 1;
+        for (int slot = hash(encoded, 0, encoded.length) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int code = slots[slot] - 1;
+            if (equals(code, encoded)) {
+                return code;
+            }
+        }
+        return -1;
+    }
+
+    int add(String value) {
+        int code = find(value);
+        if (code >= 0) {
+            return code;
+        }
+        code = size;
+        if (value == null) {
+            nullCode = code;
+            append(new byte[0]);
+            return code;
+        }
+        if ((size + 1) * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        append(encoded);
+        insert(code, encoded, 0, encoded.length);
+        return code;
+    }
+
+    String get(int code) {
+        if (code == nullCode) {
+            return null;
+        }
+        return new String(bytes, offsets[code], offsets[code + 1] - offsets[code], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * codes[0, count) 가 가리키는 값만 담은 새 사전을 만들고 codes 를 새 코드로 바꾼다.
+     */
+    StringDictionary compact(int[] codes, int count) {
+        StringDictionary compacted = new StringDictionary();
+        int[] remap = new int[size];
+        Arrays.fill(remap, -1);
+        for (int i = 0; i < count; i++) {
+            int code = codes[i];
+            if (remap[code] < 0) {
+                remap[code] = compacted.add(get(code));
+            }
+            codes[i] = remap[code];
+        }
+        return compacted;
+    }
+
+    /**
+     * 코드별로 값이 prefix 로 시작하고 contains 를 포함하는지. null 이나 빈 조건은 보지 않고, null 값은 맞지 않는다.
+     * 값을 String 으로 만들지 않고 UTF-8 byte 로 비교한다. (UTF-8 은 한 문자의 byte 열이 다른 문자 중간에 나오지 않으므로 결과가 같다)
+     */
+    boolean[] matches(String prefix, String contains) {
+        byte[] head = prefix == null || prefix.isEmpty() ? null : prefix.getBytes(StandardCharsets.UTF_8);
+        byte[] part = contains == null || contains.isEmpty() ? null : contains.getBytes(StandardCharsets.UTF_8);
+        boolean[] matches = new boolean[size];
+        for (int code = 0; code < size; code++) {
+            int from = offsets[code];
+            int to = offsets[code + 1];
+            matches[code] = code != nullCode
+                    && (head == null || regionMatches(from, to, head))
+                    && (part == null || contains(from, to, part));
+        }
+        return matches;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long memoryBytes() {
+        return bytes.length + (long) offsets.length * Integer.BYTES + (long) slots.length * Integer.BYTES;
+    }
+
+    private void append(byte[] encoded) {
+        if (byteSize + encoded.length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(byteSize + encoded.length, bytes.length * 2));
+        }
+        System.arraycopy(encoded, 0, bytes, byteSize, encoded.length);
+        byteSize += encoded.length;
+
+        if (size + 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        size++;
+        offsets[size] = byteSize;
+    }
+
+    private void insert(int code, byte[] source, int from, int length) {
+        int mask = slots.length - 1;
+        int slot = hash(source, from, length) & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = code + 1;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        for (int code = 0; code < size; code++) {
+            if (code != nullCode) {
+                insert(code, bytes, offsets[code], offsets[code + 1] - offsets[code]);
+            }
+        }
+    }
+
+    private boolean equals(int code, byte[] encoded) {
+        int from = offsets[code];
+        int length = offsets[code + 1] - from;
+        if (length != encoded.length || code == nullCode) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[from + i] != encoded[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean regionMatches(int from, int to, byte[] value) {
+        if (to - from < value.length) {
+            return false;
+        }
+        for (int i = 0; i < value.length; i++) {
+            if (bytes[from + i] != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean contains(int from, int to, byte[] value) {
+        for (int start = from; start + value.length <= to; start++) {
+            if (regionMatches(start, to, value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int hash(byte[] source, int from, int length) {
+        int h = 1;
+        for (int i = from; i < from + length; i++) {
+            h = 31 * h + source[i];
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,27 @@
+package study.querydsl.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import study.querydsl.entity.Team;
+
+import javax.persistence.QueryHint;
+import java.util.List;
+
+import static org.hibernate.annotations.QueryHints.CACHEABLE;
+import static org.hibernate.annotations.QueryHints.CACHE_REGION;
+
+@Repository
+public interface TeamRepository extends JpaRepository<Team, Long> {
+
+    /**
+     * 팀 이름 -> id. 쿼리 캐시(Team.ID_BY_NAME_CACHE_REGION)에서 읽으므로 반복 조회는 DB 에 가지 않는다.
+     * (이름은 유일하지 않으므로 여러 개일 수 있다)
+     */
+    @QueryHints({@QueryHint(name = CACHEABLE, value = "true"),
+            @QueryHint(name = CACHE_REGION, value = Team.ID_BY_NAME_CACHE_REGION)})
+    @Query("select t.id from Team t where t.name = :name order by t.id")
+    List<Long> findIdsByName(@Param("name") String name);
+}
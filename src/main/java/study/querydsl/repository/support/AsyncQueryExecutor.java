@@ -0,0 +1,136 @@
+package study.querydsl.repository.support;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 조회를 서블릿 스레드가 아닌 전용 스레드 풀에서 실행한다. 요청 스레드는 바로 반환되어 다른 요청을 받는다.
+ * <p>
+ * 풀 크기는 커넥션 풀 크기에 맞춘다. 더 많은 스레드는 커넥션을 기다리기만 한다.
+ * 큐가 가득 차면 기다리지 않고 바로 503 으로 거절하고, timeout 안에 끝나지 않으면 503 으로 응답한다.
+ * timeout 된 작업이 아직 큐에 있으면 실행하지 않고 버린다.
+ * 요청에 {@link QueryDeadline} 예산이 열려 있으면 작업 스레드로 넘기고, timeout 이나 클라이언트 연결이 끊기면 실행 중인 쿼리를 취소한다.
+ * <p>
+ * 큐 길이와 실행 중인 작업 수는 repository.async.queue / repository.async.active,
+ * 큐 대기 시간은 repository.async.wait, 거절과 timeout 은 repository.async.rejected / repository.async.timeouts 로 기록한다.
+ */
+@Component
+public class AsyncQueryExecutor {
+
+    private final ThreadPoolTaskExecutor executor;
+    private final long timeoutMillis;
+    private final Timer waitTimer;
+    private final Counter rejected;
+    private final Counter timeouts;
+
+    public AsyncQueryExecutor(MeterRegistry meterRegistry,
+                              @Value("${querydsl.async.pool-size:${spring.datasource.hikari.maximum-pool-size:10}}") int poolSize,
+                              @Value("${querydsl.async.queue-capacity:100}") int queueCapacity,
+                              @Value("${querydsl.async.timeout-millis:5000}") long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+
+        this.executor = new ThreadPoolTaskExecutor();
+        this.executor.setCorePoolSize(poolSize);
+        this.executor.setMaxPoolSize(poolSize);
+        this.executor.setQueueCapacity(queueCapacity);
+        this.executor.setThreadNamePrefix("async-query-");
+        this.executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        this.executor.initialize();
+
+        Gauge.builder("repository.async.queue", executor, e -> e.getThreadPoolExecutor().getQueue().size())
+                .register(meterRegistry);
+        Gauge.builder("repository.async.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+                .register(meterRegistry);
+        this.waitTimer = meterRegistry.timer("repository.async.wait");
+        this.rejected = meterRegistry.counter("repository.async.rejected");
+        this.timeouts = meterRegistry.counter("repository.async.timeouts");
+    }
+
+    /**
+     * 거절되면 ResponseStatusException(503) 으로 완료된 future 를 반환한다.
+     * future 를 먼저 완료(cancel)하면 아직 시작하지 않은 조회는 실행하지 않는다.
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> query) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        QueryDeadline.Budget budget = QueryDeadline.current();
+        if (budget != null) {
+            budget.handOff();
+            future.whenComplete((value, e) -> budget.finish());
+        }
+        long submitted = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                waitTimer.record(System.nanoTime() - submitted, TimeUnit.NANOSECONDS);
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    future.complete(budget == null ? query.get() : budget.call(query));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            future.completeExceptionally(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "조회 요청이 너무 많습니다.", e));
+        }
+        return future;
+    }
+
+    /**
+     * {@link #supply} 에 timeout 을 건 DeferredResult. 컨트롤러에서 그대로 반환한다.
+     */
+    public <T> DeferredResult<T> defer(Supplier<T> query) {
+        DeferredResult<T> result = new DeferredResult<>(timeoutMillis);
+        QueryDeadline.Budget budget = QueryDeadline.current();
+        CompletableFuture<T> future = supply(query);
+
+        result.onTimeout(() -> {
+            timeouts.increment();
+            cancel(budget, "timeout");
+            future.cancel(false);
+            result.setErrorResult(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "조회 시간이 " + timeoutMillis + "ms 를 넘었습니다."));
+        });
+        //클라이언트가 연결을 끊은 경우 등
+        result.onError(e -> {
+            cancel(budget, "disconnect");
+            future.cancel(false);
+        });
+
+        future.whenComplete((value, e) -> {
+            if (e == null) {
+                result.setResult(value);
+            } else if (!future.isCancelled()) {
+                result.setErrorResult(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+            }
+        });
+        return result;
+    }
+
+    private static void cancel(QueryDeadline.Budget budget, String reason) {
+        if (budget != null) {
+            budget.cancel(reason);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
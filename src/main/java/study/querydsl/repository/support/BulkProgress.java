@@ -0,0 +1,36 @@
+package study.querydsl.repository.support;
+
+import lombok.Getter;
+
+/**
+ * 나눠서 실행하는 벌크 연산의 진행 상황. 청크가 끝날 때마다 새로 만들어 전달하고 마지막 값이 결과가 된다.
+ */
+@Getter
+public class BulkProgress {
+
+    //update 또는 delete
+    private final String operation;
+    private final int chunks;
+    private final long rows;
+    //마지막 청크의 가장 큰 id. 중단되면 조건에 member.id.gt(lastId) 를 더해 이어서 실행한다.
+    private final Long lastId;
+    private final long elapsedNanos;
+
+    public BulkProgress(String operation, int chunks, long rows, Long lastId, long elapsedNanos) {
+        this.operation = operation;
+        this.chunks = chunks;
+        this.rows = rows;
+        this.lastId = lastId;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rows * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %d rows in %d chunks, %.2f s (%.0f rows/sec)",
+                operation, rows, chunks, elapsedNanos / 1_000_000_000.0, getRowsPerSecond());
+    }
+}
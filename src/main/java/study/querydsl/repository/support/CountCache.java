@@ -0,0 +1,55 @@
+package study.querydsl.repository.support;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * 페이징 count 쿼리 결과 캐시.
+ * 같은 검색 조건이면 몇 번째 페이지든 count 는 같으므로 조건당 한 번만 count 쿼리를 실행한다.
+ * Member/Team 이 변경되면 커밋된 뒤에 전체를 비운다. flush 시점에 비우면 커밋 전에 다른 요청이 이전 count 를 다시 캐시할 수 있다.
+ * <p>
+ * 쓰기 트랜잭션 안에서는 커밋되지 않은(롤백될 수 있는) 행을 센 값이 캐시되지 않도록 캐시를 거치지 않는다. ({@link MemberSearchCache} 와 같다)
+ */
+@Component
+public class CountCache {
+
+    private final Cache<Object, Long> cache;
+
+    public CountCache(MeterRegistry meterRegistry,
+                      @Value("${querydsl.count-cache.ttl-seconds:30}") long ttlSeconds,
+                      @Value("${querydsl.count-cache.maximum-size:1000}") long maximumSize) {
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "memberCount");
+    }
+
+    public long get(Object key, LongSupplier countQuery) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return countQuery.getAsLong();
+        }
+        return cache.get(key, k -> countQuery.getAsLong());
+    }
+
+    /**
+     * 트랜잭션 안의 변경은 트랜잭션이 끝난 뒤 다시 발행되는 이벤트({@link MemberTeamChangedEvent#isTransactionCompleted()})에서 비운다.
+     */
+    @EventListener
+    public void invalidate(MemberTeamChangedEvent event) {
+        if (event.isTransactionCompleted() || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            cache.invalidateAll();
+        }
+    }
+}
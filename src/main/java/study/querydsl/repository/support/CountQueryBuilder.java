@@ -0,0 +1,172 @@
+package study.querydsl.repository.support;
+
+import com.mysema.commons.lang.Assert;
+import com.querydsl.core.DefaultQueryMetadata;
+import com.querydsl.core.JoinExpression;
+import com.querydsl.core.JoinType;
+import com.querydsl.core.QueryMetadata;
+import com.querydsl.core.types.EntityPath;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.ParamExpression;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.SubQueryExpression;
+import com.querydsl.core.types.TemplateExpression;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.jpa.impl.JPAQuery;
+
+import javax.persistence.EntityManager;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * content 쿼리로부터 count 쿼리를 만든다.
+ * <ul>
+ *     <li>where/having 에서 쓰이지 않는 to-one 연관관계 left join 은 행 수를 바꾸지 않으므로 제거한다. (엔티티 theta join 은 남긴다)</li>
+ *     <li>엔티티 대신 id 를 count 한다. distinct 쿼리는 root 엔티티나 단일 값을 조회할 때만 만들 수 있고 그 값을 count distinct 한다.</li>
+ *     <li>order by, offset, limit, fetch join 은 버린다.</li>
+ *     <li>Param 바인딩은 그대로 옮긴다.</li>
+ * </ul>
+ */
+public final class CountQueryBuilder {
+
+    private CountQueryBuilder() {
+    }
+
+    public static JPAQuery<Long> from(EntityManager em, JPAQuery<?> contentQuery) {
+        QueryMetadata source = contentQuery.getMetadata();
+        Assert.isTrue(source.getGroupBy().isEmpty(), "group by 쿼리는 count 쿼리를 만들 수 없습니다.");
+
+        List<JoinExpression> joins = source.getJoins();
+        Assert.isTrue(joins.get(0).getTarget() instanceof EntityPath, "from 절은 엔티티여야 합니다.");
+        EntityPath<?> root = (EntityPath<?>) joins.get(0).getTarget();
+
+        Expression<?> counted = idPath(em, root);
+        Set<Path<?>> required = new HashSet<>();
+        if (source.isDistinct() && !root.equals(source.getProjection())) {
+            Expression<?> projection = source.getProjection();
+            Assert.isTrue(projection != null && !(projection instanceof FactoryExpression),
+                    "distinct 쿼리는 root 엔티티나 단일 값을 조회할 때만 count 쿼리를 만들 수 있습니다.");
+            //distinct 결과 행 수는 조회하는 값으로 정해진다.
+            counted = projection;
+            collectRoots(projection, required);
+        }
+        collectRoots(source.getWhere(), required);
+        collectRoots(source.getHaving(), required);
+
+        // 뒤의 join 이 앞의 join alias 를 참조할 수 있으므로 역순으로 판단한다.
+        boolean[] keep = new boolean[joins.size()];
+        keep[0] = true;
+        for (int i = joins.size() - 1; i > 0; i--) {
+            JoinExpression join = joins.get(i);
+            keep[i] = !isPrunable(em, join) || required.contains(alias(join.getTarget()));
+            if (keep[i]) {
+                collectRoots(join.getTarget(), required);
+                collectRoots(join.getCondition(), required);
+            }
+        }
+
+        DefaultQueryMetadata metadata = new DefaultQueryMetadata();
+        for (int i = 0; i < joins.size(); i++) {
+            if (!keep[i]) {
+                continue;
+            }
+            JoinExpression join = joins.get(i);
+            metadata.addJoin(join.getType(), join.getTarget());
+            if (join.getCondition() != null) {
+                metadata.addJoinCondition(join.getCondition());
+            }
+        }
+        metadata.addWhere(source.getWhere());
+        source.getParams().forEach((param, value) -> setParam(metadata, param, value));
+        metadata.setProjection(Expressions.numberOperation(Long.class,
+                source.isDistinct() ? Ops.AggOps.COUNT_DISTINCT_AGG : Ops.AggOps.COUNT_AGG,
+                counted));
+
+        return new JPAQuery<>(em, metadata);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void setParam(QueryMetadata metadata, ParamExpression<T> param, Object value) {
+        metadata.setParam(param, (T) value);
+    }
+
+    /**
+     * to-one 연관관계의 left join 만 결과 행 수에 영향을 주지 않는다.
+     * leftJoin(team).on(...) 같은 엔티티 join 은 행을 늘릴 수 있으므로 남긴다.
+     */
+    private static boolean isPrunable(EntityManager em, JoinExpression join) {
+        if (join.getType() != JoinType.LEFTJOIN) {
+            return false;
+        }
+        Expression<?> target = join.getTarget();
+        Expression<?> association = isAlias(target) ? ((Operation<?>) target).getArg(0) : target;
+        if (!(association instanceof Path) || ((Path<?>) association).getMetadata().getParent() == null) {
+            return false;
+        }
+        Path<?> path = (Path<?>) association;
+        try {
+            Attribute<?, ?> attribute = em.getMetamodel()
+                    .managedType(path.getMetadata().getParent().getType())
+                    .getAttribute(path.getMetadata().getName());
+            return attribute.getPersistentAttributeType() == Attribute.PersistentAttributeType.MANY_TO_ONE
+                    || attribute.getPersistentAttributeType() == Attribute.PersistentAttributeType.ONE_TO_ONE;
+        } catch (IllegalArgumentException e) {
+            //메타모델에 없는 경로
+            return false;
+        }
+    }
+
+    private static Path<?> alias(Expression<?> target) {
+        if (isAlias(target)) {
+            return ((Path<?>) ((Operation<?>) target).getArg(1)).getRoot();
+        }
+        return target instanceof Path ? ((Path<?>) target).getRoot() : null;
+    }
+
+    private static boolean isAlias(Expression<?> target) {
+        return target instanceof Operation && ((Operation<?>) target).getOperator() == Ops.ALIAS;
+    }
+
+    private static Expression<?> idPath(EntityManager em, EntityPath<?> root) {
+        EntityType<?> entityType = em.getMetamodel().entity(root.getType());
+        String idName = entityType.getId(entityType.getIdType().getJavaType()).getName();
+        return Expressions.path(entityType.getIdType().getJavaType(), root, idName);
+    }
+
+    private static void collectRoots(Expression<?> expr, Set<Path<?>> roots) {
+        if (expr == null) {
+            return;
+        }
+        if (expr instanceof Path) {
+            roots.add(((Path<?>) expr).getRoot());
+        } else if (expr instanceof Operation) {
+            for (Expression<?> arg : ((Operation<?>) expr).getArgs()) {
+                collectRoots(arg, roots);
+            }
+        } else if (expr instanceof TemplateExpression) {
+            for (Object arg : ((TemplateExpression<?>) expr).getArgs()) {
+                if (arg instanceof Expression) {
+                    collectRoots((Expression<?>) arg, roots);
+                }
+            }
+        } else if (expr instanceof FactoryExpression) {
+            for (Expression<?> arg : ((FactoryExpression<?>) expr).getArgs()) {
+                collectRoots(arg, roots);
+            }
+        } else if (expr instanceof SubQueryExpression) {
+            QueryMetadata metadata = ((SubQueryExpression<?>) expr).getMetadata();
+            collectRoots(metadata.getWhere(), roots);
+            collectRoots(metadata.getProjection(), roots);
+            for (JoinExpression join : metadata.getJoins()) {
+                collectRoots(join.getTarget(), roots);
+                collectRoots(join.getCondition(), roots);
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package study.querydsl.repository.support;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Member/Team 데이터 버전. {@link MemberTeamChangedEvent} 마다 올라간다.
+ * 변경 시점과 트랜잭션 종료 후 두 번 올라가므로 커밋 전에 읽은 이전 데이터가 새 버전으로 남지 않는다.
+ * <p>
+ * 버전은 JVM 하나 안의 카운터라서 ETag 에는 기동할 때마다 새로 뽑는 난수(bootId)를 함께 넣는다.
+ * (시각에서 출발하는 카운터는 재시작 전 버전과 겹칠 수 있다)
+ * <p>
+ * 인스턴스가 하나일 때만 맞다. 여러 인스턴스가 같은 DB 를 쓰면 다른 인스턴스의 변경으로는 버전이 오르지 않으므로
+ * 로드밸런서 뒤에서는 ETag 가 인스턴스마다 다르고, 바뀐 데이터에 304 를 줄 수 있다.
+ */
+@Component
+public class DataVersion {
+
+    private final String bootId = UUID.randomUUID().toString();
+    private final AtomicLong version = new AtomicLong();
+
+    public long current() {
+        return version.get();
+    }
+
+    @EventListener
+    public void increment(MemberTeamChangedEvent event) {
+        version.incrementAndGet();
+    }
+
+    /**
+     * 현재 버전과 keys(검색 종류, 정규화한 검색 조건, 페이지 등 toString 이 같으면 같은 응답인 값)로 만든 ETag 값.
+     * 조회 전에 만들어야 한다. 조회 후에 만들면 조회 중에 바뀌기 전의 데이터가 새 버전의 ETag 를 달고 나간다.
+     */
+    public String etag(Object... keys) {
+        String key = bootId + ":" + current() + ":" + Arrays.toString(keys);
+        return DigestUtils.md5DigestAsHex(key.getBytes(StandardCharsets.UTF_8));
+    }
+}
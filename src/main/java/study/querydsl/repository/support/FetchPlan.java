@@ -0,0 +1,172 @@
+package study.querydsl.repository.support;
+
+import com.mysema.commons.lang.Assert;
+import com.querydsl.core.types.CollectionExpression;
+import com.querydsl.core.types.EntityPath;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.dsl.PathBuilder;
+import com.querydsl.jpa.impl.JPAQuery;
+import org.hibernate.Hibernate;
+import org.hibernate.proxy.HibernateProxy;
+import org.springframework.beans.PropertyAccessorFactory;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.metamodel.EntityType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 쿼리가 필요로 하는 연관관계를 선언한다.
+ * <ul>
+ *     <li>{@link #join} - fetch join 으로 한 번에 가져온다. to-one 이나 페이징하지 않는 컬렉션에 쓴다.</li>
+ *     <li>{@link #batch} - 조회 후 아직 초기화되지 않은 연관관계를 IN 쿼리로 모아서 초기화한다. 페이징하는 컬렉션에 쓴다.</li>
+ * </ul>
+ * <pre>
+ * FetchPlan.join(member.team, team)
+ * FetchPlan.batch(team.members)
+ * </pre>
+ */
+public final class FetchPlan {
+
+    public static final FetchPlan NONE = new FetchPlan(Collections.emptyList(), Collections.emptyList(), false);
+
+    private static final int BATCH_SIZE = 500;
+
+    private final List<Consumer<JPAQuery<?>>> joins;
+    private final List<Path<?>> batches;
+    private final boolean collectionJoin;
+
+    private FetchPlan(List<Consumer<JPAQuery<?>>> joins, List<Path<?>> batches, boolean collectionJoin) {
+        this.joins = joins;
+        this.batches = batches;
+        this.collectionJoin = collectionJoin;
+    }
+
+    public static <P> FetchPlan join(EntityPath<P> association, EntityPath<P> alias) {
+        return NONE.andJoin(association, alias);
+    }
+
+    public static <P> FetchPlan join(CollectionExpression<?, P> association, Path<P> alias) {
+        return NONE.andJoin(association, alias);
+    }
+
+    public static FetchPlan batch(Path<?> association) {
+        return NONE.andBatch(association);
+    }
+
+    public <P> FetchPlan andJoin(EntityPath<P> association, EntityPath<P> alias) {
+        return new FetchPlan(append(joins, query -> query.leftJoin(association, alias).fetchJoin()), batches, collectionJoin);
+    }
+
+    public <P> FetchPlan andJoin(CollectionExpression<?, P> association, Path<P> alias) {
+        return new FetchPlan(append(joins, query -> query.leftJoin(association, alias).fetchJoin()), batches, true);
+    }
+
+    public FetchPlan andBatch(Path<?> association) {
+        Assert.notNull(association.getMetadata().getParent(), "연관관계 경로여야 합니다.");
+        return new FetchPlan(joins, append(batches, association), collectionJoin);
+    }
+
+    /**
+     * 컬렉션 fetch join 은 행이 늘어나 DB 페이징을 할 수 없다. (Hibernate 가 메모리에서 페이징한다)
+     */
+    public boolean isPageable() {
+        return !collectionJoin;
+    }
+
+    /**
+     * fetch join 을 쿼리에 추가한다. 추가한 join 의 alias 는 where 절에서 그대로 쓸 수 있다.
+     */
+    public <T> JPAQuery<T> applyTo(JPAQuery<T> query) {
+        for (Consumer<JPAQuery<?>> join : joins) {
+            join.accept(query);
+        }
+        return query;
+    }
+
+    public <T> List<T> fetch(EntityManager em, JPAQuery<T> query) {
+        List<T> rows = applyTo(query).fetch();
+        initialize(em, rows);
+        return rows;
+    }
+
+    /**
+     * 조회 결과에서 batch 로 선언한 연관관계를 초기화한다.
+     */
+    public void initialize(EntityManager em, List<?> rows) {
+        PersistenceUnitUtil persistenceUnitUtil = em.getEntityManagerFactory().getPersistenceUnitUtil();
+        for (Path<?> association : batches) {
+            Class<?> ownerType = association.getMetadata().getParent().getType();
+            String property = association.getMetadata().getName();
+
+            Set<Object> targets = new LinkedHashSet<>();
+            for (Object row : rows) {
+                if (ownerType.isInstance(row)) {
+                    Object value = PropertyAccessorFactory.forDirectFieldAccess(row).getPropertyValue(property);
+                    if (value != null && !Hibernate.isInitialized(value)) {
+                        targets.add(value instanceof HibernateProxy
+                                ? ((HibernateProxy) value).getHibernateLazyInitializer().getIdentifier()
+                                : persistenceUnitUtil.getIdentifier(row));
+                    }
+                }
+            }
+
+            List<Object> chunk = new ArrayList<>(Math.min(targets.size(), BATCH_SIZE));
+            for (Object target : targets) {
+                chunk.add(target);
+                if (chunk.size() == BATCH_SIZE) {
+                    load(em, association, ownerType, property, chunk);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                load(em, association, ownerType, property, chunk);
+            }
+        }
+    }
+
+    /**
+     * to-one 은 대상 엔티티를 id IN 으로 읽어 프록시를 채우고,
+     * 컬렉션은 소유 엔티티를 다시 읽으면서 fetch join 해 컬렉션을 채운다.
+     */
+    private void load(EntityManager em, Path<?> association, Class<?> ownerType, String property, List<Object> ids) {
+        if (association instanceof CollectionExpression) {
+            PathBuilder<Object> owner = entityPath(ownerType, property + "Owner");
+            new JPAQuery<>(em)
+                    .select(owner)
+                    .distinct()
+                    .from(owner)
+                    .leftJoin(owner.get(property)).fetchJoin()
+                    .where(owner.get(idName(em, ownerType)).in(ids))
+                    .fetch();
+        } else {
+            PathBuilder<Object> target = entityPath(association.getType(), property + "Batch");
+            new JPAQuery<>(em)
+                    .select(target)
+                    .from(target)
+                    .where(target.get(idName(em, association.getType())).in(ids))
+                    .fetch();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PathBuilder<Object> entityPath(Class<?> type, String variable) {
+        return new PathBuilder<>((Class<Object>) type, variable);
+    }
+
+    private static String idName(EntityManager em, Class<?> type) {
+        EntityType<?> entityType = em.getMetamodel().entity(type);
+        return entityType.getId(entityType.getIdType().getJavaType()).getName();
+    }
+
+    private static <E> List<E> append(List<E> list, E element) {
+        List<E> result = new ArrayList<>(list);
+        result.add(element);
+        return Collections.unmodifiableList(result);
+    }
+}
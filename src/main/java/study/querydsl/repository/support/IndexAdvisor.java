@@ -0,0 +1,131 @@
+package study.querydsl.repository.support;
+
+import com.p6spy.engine.common.PreparedStatementInformation;
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import lombok.Getter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 구간 안에서 실행된 select 문에 EXPLAIN 을 실행해 테이블별 접근 방법(인덱스 / 전체 스캔)을 보고한다. (H2 실행 계획 형식)
+ * <pre>
+ * List&lt;IndexAdvisor.Report&gt; reports = indexAdvisor.explain("search", () -> memberRepository.search(condition));
+ * </pre>
+ * 실행 계획에서 조건 없이 테이블이나 인덱스 전체를 읽는 테이블을 scan 으로 본다.
+ */
+@Component
+public class IndexAdvisor extends SimpleJdbcEventListener {
+
+    private static final ThreadLocal<Capture> CAPTURE = new ThreadLocal<>();
+
+    private static final Pattern LEADING_COMMENT = Pattern.compile("^\\s*/\\*.*?\\*/\\s*", Pattern.DOTALL);
+    //"PUBLIC"."MEMBER" "M" /* PUBLIC.IDX_MEMBER_AGE: AGE >= 20 */ 또는 /* PUBLIC.MEMBER.tableScan */
+    private static final Pattern TABLE_ACCESS = Pattern.compile(
+            "\"\\w+\"\\.\"(\\w+)\"(?: \"?\\w+\"?)?\\s*/\\* \\w+\\.([\\w.]+?)(:[^*]*)? \\*/");
+
+    //p6spy 가 DataSource 를 감쌀 때 리스너를 모으므로 JdbcTemplate 은 나중에 꺼낸다. (순환 참조)
+    private final ObjectProvider<JdbcTemplate> jdbcTemplate;
+
+    public IndexAdvisor(ObjectProvider<JdbcTemplate> jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void onAfterPreparedStatementSet(PreparedStatementInformation statementInformation, int parameterIndex, Object value, SQLException e) {
+        Capture capture = CAPTURE.get();
+        if (capture != null) {
+            capture.parameters.computeIfAbsent(statementInformation, key -> new TreeMap<>()).put(parameterIndex, value);
+        }
+    }
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        Capture capture = CAPTURE.get();
+        if (capture == null) {
+            return;
+        }
+        //use_sql_comments 주석 안의 JPQL 에도 ? 가 있으므로 주석을 떼고 파라미터는 따로 바인딩한다.
+        String sql = LEADING_COMMENT.matcher(statementInformation.getSql()).replaceFirst("");
+        Map<Integer, Object> parameters = capture.parameters.remove(statementInformation);
+        if (sql.regionMatches(true, 0, "select", 0, 6)) {
+            capture.statements.put(sql + parameters, new Object[]{sql, parameters == null ? new Object[0] : parameters.values().toArray()});
+        }
+    }
+
+    public List<Report> explain(String label, Runnable work) {
+        Capture capture = new Capture();
+        CAPTURE.set(capture);
+        try {
+            work.run();
+        } finally {
+            CAPTURE.remove();
+        }
+
+        List<Report> reports = new ArrayList<>();
+        for (Object[] statement : capture.statements.values()) {
+            String sql = (String) statement[0];
+            String plan = jdbcTemplate.getObject().queryForObject("explain " + sql, String.class, (Object[]) statement[1]);
+            reports.add(new Report(label, sql, plan));
+        }
+        return reports;
+    }
+
+    private static class Capture {
+
+        private final Map<StatementInformation, Map<Integer, Object>> parameters = new IdentityHashMap<>();
+        //sql + 파라미터 -> [sql, 파라미터 배열]. 같은 문장은 한 번만 EXPLAIN 한다.
+        private final Map<String, Object[]> statements = new LinkedHashMap<>();
+    }
+
+    @Getter
+    public static class Report {
+
+        private final String label;
+        private final String sql;
+        private final String plan;
+        //조건 없이 전체를 읽는 테이블
+        private final Set<String> scannedTables = new LinkedHashSet<>();
+        //조건으로 탐색하는 인덱스
+        private final Set<String> indexes = new LinkedHashSet<>();
+
+        Report(String label, String sql, String plan) {
+            this.label = label;
+            this.sql = sql;
+            this.plan = plan;
+
+            Matcher matcher = TABLE_ACCESS.matcher(plan);
+            while (matcher.find()) {
+                String table = matcher.group(1);
+                String access = matcher.group(2);
+                if (access.endsWith(".tableScan") || matcher.group(3) == null) {
+                    scannedTables.add(table);
+                } else {
+                    indexes.add(access);
+                }
+            }
+        }
+
+        public boolean hasScan() {
+            return !scannedTables.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return label + (hasScan() ? " SCAN " + scannedTables : " ok") + " indexes=" + indexes;
+        }
+    }
+}
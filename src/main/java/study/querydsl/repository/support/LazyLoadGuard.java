@@ -0,0 +1,129 @@
+package study.querydsl.repository.support;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.HibernateException;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.InitializeCollectionEvent;
+import org.hibernate.event.spi.InitializeCollectionEventListener;
+import org.hibernate.event.spi.LoadEvent;
+import org.hibernate.event.spi.LoadEventListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 지연 로딩(프록시 초기화, 컬렉션 초기화) 횟수를 구간별로 세어 N+1 을 잡는다.
+ * <p>
+ * 구간은 {@link #open()} 으로 연다. (웹 요청은 LazyLoadGuardFilter 가 연다)
+ * 지연 로딩이 threshold 를 넘으면 mode 에 따라 경고 로그(LOG)를 남기거나 예외(FAIL)를 던진다.
+ * 필요한 연관관계는 {@link FetchPlan} 으로 미리 가져온다.
+ */
+@Slf4j
+@Component
+public class LazyLoadGuard implements LoadEventListener, InitializeCollectionEventListener {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Mode {OFF, LOG, FAIL}
+
+    private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<>();
+
+    private final EntityManagerFactory emf;
+    private final MeterRegistry meterRegistry;
+    private final Mode mode;
+    private final int threshold;
+
+    public LazyLoadGuard(EntityManagerFactory emf,
+                         MeterRegistry meterRegistry,
+                         @Value("${querydsl.lazy-load-guard.mode:LOG}") Mode mode,
+                         @Value("${querydsl.lazy-load-guard.threshold:20}") int threshold) {
+        this.emf = emf;
+        this.meterRegistry = meterRegistry;
+        this.mode = mode;
+        this.threshold = threshold;
+    }
+
+    @PostConstruct
+    public void register() {
+        EventListenerRegistry registry = emf.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+
+        registry.appendListeners(EventType.LOAD, this);
+        registry.appendListeners(EventType.INIT_COLLECTION, this);
+    }
+
+    public Scope open(String name) {
+        Scope scope = new Scope(name, CURRENT.get());
+        CURRENT.set(scope);
+        return scope;
+    }
+
+    public Scope open() {
+        return open("default");
+    }
+
+    @Override
+    public void onLoad(LoadEvent event, LoadType loadType) throws HibernateException {
+        //프록시 초기화만 지연 로딩이다. (em.find 는 GET)
+        if (loadType == LoadEventListener.IMMEDIATE_LOAD) {
+            lazyLoaded(event.getEntityClassName());
+        }
+    }
+
+    @Override
+    public void onInitializeCollection(InitializeCollectionEvent event) throws HibernateException {
+        lazyLoaded(event.getCollection().getRole());
+    }
+
+    private void lazyLoaded(String target) {
+        Scope scope = CURRENT.get();
+        if (scope == null || mode == Mode.OFF) {
+            return;
+        }
+        meterRegistry.counter("repository.lazy.loads", "target", target).increment();
+
+        scope.counts.merge(target, 1, Integer::sum);
+        if (++scope.total == threshold + 1) {
+            String message = "지연 로딩이 " + threshold + "회를 넘었습니다. scope=" + scope.name + ", " + scope.counts
+                    + " - FetchPlan 으로 연관관계를 함께 조회하세요.";
+            if (mode == Mode.FAIL) {
+                throw new IllegalStateException(message);
+            }
+            log.warn(message);
+        }
+    }
+
+    public static final class Scope implements AutoCloseable {
+
+        private final String name;
+        private final Scope previous;
+        private final Map<String, Integer> counts = new TreeMap<>();
+        private int total;
+
+        private Scope(String name, Scope previous) {
+            this.name = name;
+            this.previous = previous;
+        }
+
+        public int getLazyLoads() {
+            return total;
+        }
+
+        @Override
+        public void close() {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package study.querydsl.repository.support;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import study.querydsl.dto.MemberSearchCondition;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * 회원 검색 결과 캐시. (검색 종류, 정규화한 검색 조건, 페이지) 를 키로 한다.
+ * 크기와 TTL 로 제한하고 Member/Team 이 변경되면 전체를 비운다.
+ * Caffeine 의 W-TinyLFU 정책으로 퇴출한다. (LRU 보다 반복 조회가 많은 트래픽에서 적중률이 높다)
+ * <p>
+ * 쓰기 트랜잭션 안에서는 커밋되지 않은 데이터가 캐시에 들어가지 않도록 캐시를 거치지 않는다.
+ * 캐시된 DTO 는 여러 요청이 공유하므로 수정하면 안 된다.
+ * 적중/실패/퇴출 수는 /actuator/metrics/cache.gets, cache.evictions (cache=memberSearch) 로 노출된다.
+ */
+@Component
+public class MemberSearchCache {
+
+    private final Cache<Object, Object> cache;
+
+    public MemberSearchCache(MeterRegistry meterRegistry,
+                             @Value("${querydsl.search-cache.ttl-seconds:10}") long ttlSeconds,
+                             @Value("${querydsl.search-cache.maximum-size:10000}") long maximumSize) {
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "memberSearch");
+    }
+
+    public <T> T get(String name, MemberSearchCondition condition, Supplier<T> loader) {
+        return get(name, condition, null, loader);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(String name, MemberSearchCondition condition, Pageable pageable, Supplier<T> loader) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return loader.get();
+        }
+        return (T) cache.get(Arrays.asList(name, condition.normalize(), pageable), key -> loader.get());
+    }
+
+    @EventListener
+    public void invalidate(MemberTeamChangedEvent event) {
+        cache.invalidateAll();
+    }
+}
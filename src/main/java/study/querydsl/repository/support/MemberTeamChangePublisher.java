@@ -0,0 +1,58 @@
+package study.querydsl.repository.support;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * {@link MemberTeamChangedEvent} 를 변경 시점(flush)에 한 번, 트랜잭션이 끝난 뒤에 한 번 더 발행한다.
+ * 변경 시점과 커밋 사이에 다른 트랜잭션이 이전 데이터를 다시 캐시할 수 있기 때문이다.
+ * 트랜잭션이 끝난 뒤에는 그 트랜잭션에서 바뀐 엔티티 종류(Member, Team)마다 한 번씩 발행한다.
+ */
+@Component
+@RequiredArgsConstructor
+public class MemberTeamChangePublisher {
+
+    private static final Object SYNCHRONIZATION_KEY = new Object();
+
+    private final ApplicationEventPublisher publisher;
+
+    /**
+     * 지금 트랜잭션에서 Member/Team 변경이 이미 DB 로 나갔는지. (flush 또는 벌크 문장)
+     */
+    public static boolean hasChanges() {
+        return TransactionSynchronizationManager.hasResource(SYNCHRONIZATION_KEY);
+    }
+
+    public void publish(Class<?> entityType, Object entity) {
+        publisher.publishEvent(new MemberTeamChangedEvent(entityType, entity));
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+
+        //트랜잭션이 끝나면 바뀐 엔티티 종류마다 한 번씩 다시 발행한다.
+        @SuppressWarnings("unchecked")
+        Set<Class<?>> changedTypes = (Set<Class<?>>) TransactionSynchronizationManager.getResource(SYNCHRONIZATION_KEY);
+        if (changedTypes != null) {
+            changedTypes.add(entityType);
+            return;
+        }
+
+        Set<Class<?>> types = new LinkedHashSet<>();
+        types.add(entityType);
+        TransactionSynchronizationManager.bindResource(SYNCHRONIZATION_KEY, types);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(SYNCHRONIZATION_KEY);
+                types.forEach(type -> publisher.publishEvent(new MemberTeamChangedEvent(type, null, true)));
+            }
+        });
+    }
+}
@@ -0,0 +1,30 @@
+package study.querydsl.repository.support;
+
+import lombok.Getter;
+
+/**
+ * Member 또는 Team 이 insert/update/delete 되었을 때 발행되는 이벤트.
+ * 검색 결과를 캐시하는 컴포넌트는 이 이벤트를 받아 캐시를 비운다.
+ */
+@Getter
+public class MemberTeamChangedEvent {
+
+    //Member.class 또는 Team.class
+    private final Class<?> entityType;
+
+    //엔티티 단위 변경일 때만 있다. 벌크 연산, 트랜잭션 종료 시점 이벤트는 null
+    private final Object entity;
+
+    //트랜잭션 종료 후 다시 발행된 이벤트. 같은 변경이 이미 한 번 발행되었다.
+    private final boolean transactionCompleted;
+
+    public MemberTeamChangedEvent(Class<?> entityType, Object entity) {
+        this(entityType, entity, false);
+    }
+
+    public MemberTeamChangedEvent(Class<?> entityType, Object entity, boolean transactionCompleted) {
+        this.entityType = entityType;
+        this.entity = entity;
+        this.transactionCompleted = transactionCompleted;
+    }
+}
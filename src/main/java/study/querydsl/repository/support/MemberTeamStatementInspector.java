@@ -0,0 +1,61 @@
+package study.querydsl.repository.support;
+
+import lombok.RequiredArgsConstructor;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.stereotype.Component;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Hibernate 가 실행하는 SQL 중 member/team 테이블을 변경하는 문장을 감지해 {@link MemberTeamChangedEvent} 를 발행한다.
+ * 엔티티 이벤트가 발생하지 않는 JPQL 벌크 update/delete (queryFactory.update/delete) 도 잡아낸다.
+ * 엔티티 쓰기 SQL 은 {@link MemberTeamChangeListener} 가 엔티티와 함께 발행하므로 건너뛴다.
+ */
+@Component
+@RequiredArgsConstructor
+public class MemberTeamStatementInspector implements StatementInspector, HibernatePropertiesCustomizer {
+
+    private static final long serialVersionUID = 1L;
+
+    //use_sql_comments 주석을 건너뛰고 첫 문장만 본다.
+    private static final Pattern WRITE = Pattern.compile(
+            "^\\s*(?:/\\*.*?\\*/\\s*)*(?:insert\\s+into|update|delete\\s+from|delete)\\s+(member|team)\\b",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    //엔티티 쓰기(pre 이벤트 ~ post 이벤트) 중인지. SQL 을 준비할 때 소비하므로 쓰기가 실패해도 남지 않는다.
+    private static final ThreadLocal<Boolean> ENTITY_WRITE = new ThreadLocal<>();
+
+    private final MemberTeamChangePublisher publisher;
+
+    static void entityWriteStarted() {
+        ENTITY_WRITE.set(Boolean.TRUE);
+    }
+
+    static void entityWriteFinished() {
+        ENTITY_WRITE.remove();
+    }
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        hibernateProperties.put(AvailableSettings.STATEMENT_INSPECTOR, this);
+    }
+
+    @Override
+    public String inspect(String sql) {
+        Matcher matcher = WRITE.matcher(sql);
+        if (matcher.find()) {
+            if (ENTITY_WRITE.get() != null) {
+                ENTITY_WRITE.remove();
+                return sql;
+            }
+            publisher.publish("member".equalsIgnoreCase(matcher.group(1)) ? Member.class : Team.class, null);
+        }
+        return sql;
+    }
+}
@@ -0,0 +1,166 @@
+package study.querydsl.repository.support;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 페이징 content 쿼리와 count 쿼리를 실행한다.
+ * querydsl.parallel-count.enabled=true 이면 count 쿼리를 별도 스레드에서 content 쿼리와 동시에 실행해
+ * 페이지 응답 시간을 두 쿼리의 합이 아니라 느린 쪽에 가깝게 만든다.
+ * <p>
+ * count 는 자체 읽기 전용 트랜잭션(REQUIRES_NEW)과 EntityManager 로 실행되므로
+ * 호출한 트랜잭션에서 아직 커밋하지 않은 변경은 보지 못한다.
+ * 호출 스레드의 쿼리 시간 예산({@link QueryDeadline})은 {@link QueryDeadline.Budget#call} 로 count 스레드에 넘긴다.
+ * count 도 같은 deadline 의 timeout 을 받고, deadline 이 지나면 count 스레드의 Session 도 취소된다.
+ * <p>
+ * 호출한 스레드는 이미 커넥션을 하나 쥐고 있을 수 있고(트랜잭션, OSIV) count 는 커넥션을 하나 더 쓴다.
+ * 동시 요청이 커넥션 풀을 모두 쥔 채로 count 를 기다리면 count 가 커넥션을 얻지 못해 connection timeout 까지 멈추므로,
+ * 동시에 병렬로 실행하는 count 는 커넥션 풀 크기(spring.datasource.hikari.maximum-pool-size)의 절반까지로 제한한다.
+ * 허용 수를 넘거나 작업 큐가 가득 차면 기다리지 않고 호출 스레드에서 순차 실행한다. (호출한 트랜잭션의 커넥션을 그대로 쓴다)
+ * <p>
+ * content 만으로 전체 개수를 알 수 있으면(PageableExecutionUtils) count 를 취소한다.
+ * 아직 시작하지 않은 count 는 실행하지 않지만, 이미 실행 중인 count 는 중단되지 않고 끝날 때까지 커넥션을 쥔다.
+ * <p>
+ * 두 쿼리의 실행 시간은 repository.page.queries (part=content|count) 로 기록한다.
+ */
+@Component
+public class PageQueryExecutor {
+
+    private final boolean parallel;
+    private final ThreadPoolTaskExecutor executor;
+    private final Semaphore permits;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Timer contentTimer;
+    private final Timer countTimer;
+
+    public PageQueryExecutor(PlatformTransactionManager transactionManager,
+                             MeterRegistry meterRegistry,
+                             @Value("${querydsl.parallel-count.enabled:false}") boolean parallel,
+                             @Value("${querydsl.parallel-count.pool-size:4}") int poolSize,
+                             @Value("${querydsl.parallel-count.queue-capacity:100}") int queueCapacity,
+                             @Value("${spring.datasource.hikari.maximum-pool-size:10}") int connectionPoolSize) {
+        this.parallel = parallel;
+        this.permits = new Semaphore(Math.min(poolSize, connectionPoolSize / 2));
+        this.contentTimer = pageQueryTimer(meterRegistry, "content");
+        this.countTimer = pageQueryTimer(meterRegistry, "count");
+
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.readOnlyTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        this.executor = new ThreadPoolTaskExecutor();
+        this.executor.setCorePoolSize(poolSize);
+        this.executor.setMaxPoolSize(poolSize);
+        this.executor.setQueueCapacity(queueCapacity);
+        this.executor.setThreadNamePrefix("page-count-");
+        //큐가 가득 차면 RejectedExecutionException. 호출 스레드에서 순차 실행한다.
+        this.executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        this.executor.initialize();
+    }
+
+    public <T> Page<T> getPage(Supplier<List<T>> contentQuery, Pageable pageable, LongSupplier countQuery) {
+        Supplier<List<T>> timedContentQuery = () -> contentTimer.record(contentQuery);
+        LongSupplier timedCountQuery = () -> countTimer.record(countQuery::getAsLong);
+        if (parallel) {
+            CompletableFuture<Long> total = submitCount(timedCountQuery);
+            if (total != null) {
+                return getPageParallel(timedContentQuery, pageable, total);
+            }
+        }
+        return PageableExecutionUtils.getPage(timedContentQuery.get(), pageable, timedCountQuery);
+    }
+
+    /**
+     * count 를 count 스레드에 넘긴다. 허용 수를 넘었거나 큐가 가득 차면 null
+     */
+    private CompletableFuture<Long> submitCount(LongSupplier countQuery) {
+        if (!permits.tryAcquire()) {
+            return null;
+        }
+        QueryDeadline.Budget budget = QueryDeadline.current();
+        Supplier<Long> count = () -> readOnlyTransaction.execute(status -> countQuery.getAsLong());
+        CompletableFuture<Long> total = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    //취소된 count 는 실행하지 않는다.
+                    if (!total.isDone()) {
+                        total.complete(budget == null ? count.get() : budget.call(count));
+                    }
+                } catch (Throwable e) {
+                    total.completeExceptionally(e);
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            return null;
+        }
+        return total;
+    }
+
+    private <T> Page<T> getPageParallel(Supplier<List<T>> contentQuery, Pageable pageable, CompletableFuture<Long> total) {
+        List<T> content;
+        try {
+            content = contentQuery.get();
+        } catch (RuntimeException e) {
+            total.cancel(false);
+            throw e;
+        }
+
+        AtomicBoolean countUsed = new AtomicBoolean();
+        Page<T> page = PageableExecutionUtils.getPage(content, pageable, () -> {
+            countUsed.set(true);
+            return join(total);
+        });
+
+        if (!countUsed.get()) {
+            total.cancel(false);
+        }
+        return page;
+    }
+
+    private long join(CompletableFuture<Long> total) {
+        try {
+            return total.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static Timer pageQueryTimer(MeterRegistry meterRegistry, String part) {
+        return Timer.builder("repository.page.queries")
+                .tag("part", part)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
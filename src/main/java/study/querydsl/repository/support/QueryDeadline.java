@@ -0,0 +1,208 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.jpa.impl.AbstractJPAQuery;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.annotations.QueryHints;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Query;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 요청마다 쿼리 시간 예산(deadline)을 두고 넘으면 실행 중인 문장을 취소한다.
+ * <p>
+ * 예산은 {@link #open(String, long)} 으로 연다. (컨트롤러는 QueryBudget 으로 연다)
+ * {@link #apply} 를 거친 쿼리는 남은 시간을 JDBC query timeout 으로 받고, 이미 시간이 지났으면 실행하지 않고 QueryTimeoutException 을 던진다.
+ * JDBC timeout 은 초 단위이므로 deadline 에는 watchdog 이 그 트랜잭션 Session 의 실행 중인 문장을 취소(Session#cancelQuery)한다.
+ * 비동기 조회는 {@link Budget#call} 로 예산을 작업 스레드에 넘기고, 클라이언트가 연결을 끊으면 {@link Budget#cancel} 로 취소한다.
+ * <p>
+ * 취소와 거절은 repository.query.timeouts (budget, reason=deadline|disconnect|timeout) 로 센다. 예산마다 한 번만 센다.
+ */
+@Slf4j
+@Component
+public class QueryDeadline {
+
+    private static final ThreadLocal<Budget> CURRENT = new ThreadLocal<>();
+
+    private final EntityManagerFactory emf;
+    private final MeterRegistry meterRegistry;
+    private final ThreadPoolTaskScheduler scheduler;
+
+    public QueryDeadline(EntityManagerFactory emf, MeterRegistry meterRegistry) {
+        this.emf = emf;
+        this.meterRegistry = meterRegistry;
+        this.scheduler = new ThreadPoolTaskScheduler();
+        this.scheduler.setThreadNamePrefix("query-deadline-");
+        this.scheduler.setRemoveOnCancelPolicy(true);
+        this.scheduler.initialize();
+    }
+
+    /**
+     * 지금 스레드의 예산. 없으면 null
+     */
+    public static Budget current() {
+        return CURRENT.get();
+    }
+
+    public Budget open(String name, long millis) {
+        Budget budget = new Budget(name, millis);
+        budget.previous = budget.bind();
+        return budget;
+    }
+
+    /**
+     * 남은 시간을 JDBC query timeout 으로 건다. 예산이 없으면 아무것도 하지 않는다.
+     */
+    public void apply(Query query) {
+        Budget budget = CURRENT.get();
+        if (budget != null) {
+            query.setHint(QueryHints.TIMEOUT_HIBERNATE, budget.enter());
+        }
+    }
+
+    public void apply(AbstractJPAQuery<?, ?> query) {
+        Budget budget = CURRENT.get();
+        if (budget != null) {
+            query.setHint(QueryHints.TIMEOUT_HIBERNATE, budget.enter());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    public class Budget implements AutoCloseable {
+
+        private final String name;
+        private final long deadline;
+        private final Set<Session> sessions = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        private final AtomicBoolean counted = new AtomicBoolean();
+        private final ScheduledFuture<?> watchdog;
+
+        private volatile boolean cancelled;
+        private volatile boolean handedOff;
+        private Budget previous;
+
+        private Budget(String name, long millis) {
+            this.name = name;
+            this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+            this.watchdog = scheduler.schedule(() -> cancel("deadline"), new Date(System.currentTimeMillis() + millis));
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long remainingMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        }
+
+        /**
+         * 실행 중인 문장을 취소한다. 이후 이 예산의 쿼리는 실행하지 않는다.
+         */
+        public void cancel(String reason) {
+            if (isFinished()) {
+                return;
+            }
+            cancelled = true;
+            count(reason);
+            for (Session session : sessions) {
+                try {
+                    session.cancelQuery();
+                } catch (RuntimeException e) {
+                    //이미 닫힌 Session
+                    log.debug("cancel query of {} failed: {}", name, e.toString());
+                }
+            }
+        }
+
+        /**
+         * query 를 이 예산으로 실행한다. 다른 스레드에서 실행할 때 쓴다.
+         */
+        public <T> T call(Supplier<T> query) {
+            Budget outer = bind();
+            try {
+                return query.get();
+            } finally {
+                unbind(outer);
+            }
+        }
+
+        /**
+         * 연 스레드가 close 해도 끝내지 않는다. 넘겨받은 쪽이 {@link #finish()} 한다.
+         */
+        public void handOff() {
+            handedOff = true;
+        }
+
+        public void finish() {
+            watchdog.cancel(false);
+            sessions.clear();
+        }
+
+        @Override
+        public void close() {
+            unbind(previous);
+            if (!handedOff) {
+                finish();
+            }
+        }
+
+        private boolean isFinished() {
+            return watchdog != null && watchdog.isCancelled();
+        }
+
+        /**
+         * 쿼리 실행 전에 부른다. 트랜잭션 Session 을 취소 대상으로 등록하고 JDBC timeout(초)을 돌려준다.
+         */
+        private int enter() {
+            long remaining = remainingMillis();
+            if (cancelled || remaining <= 0) {
+                count("deadline");
+                throw new QueryTimeoutException("query budget of " + name + " exceeded");
+            }
+
+            EntityManager em = EntityManagerFactoryUtils.getTransactionalEntityManager(emf);
+            if (em != null) {
+                sessions.add(em.unwrap(Session.class));
+            }
+            return (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(remaining + 999));
+        }
+
+        private void count(String reason) {
+            if (counted.compareAndSet(false, true)) {
+                meterRegistry.counter("repository.query.timeouts", "budget", name, "reason", reason).increment();
+            }
+        }
+
+        private Budget bind() {
+            Budget outer = CURRENT.get();
+            CURRENT.set(this);
+            return outer;
+        }
+
+        private void unbind(Budget previous) {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
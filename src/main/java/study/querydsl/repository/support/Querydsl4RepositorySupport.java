@@ -4,33 +4,52 @@ import com.mysema.commons.lang.Assert;
 import com.querydsl.core.types.EntityPath;
 import com.querydsl.core.types.Expression;
 import com.querydsl.core.types.dsl.PathBuilder;
+import com.querydsl.jpa.JPQLQuery;
+import com.querydsl.jpa.impl.AbstractJPAQuery;
 import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.support.JpaEntityInformation;
 import org.springframework.data.jpa.repository.support.JpaEntityInformationSupport;
 import org.springframework.data.jpa.repository.support.Querydsl;
 import org.springframework.data.querydsl.SimpleEntityPathResolver;
-import org.springframework.data.support.PageableExecutionUtils;
 
 import javax.annotation.PostConstruct;
 import javax.persistence.EntityManager;
+import java.util.Arrays;
 import java.util.List;
 import java.util.function.Function;
+import java.util.function.LongSupplier;
 
 public class Querydsl4RepositorySupport {
 
     private final Class domainClass;
+    private final SortPolicy sortPolicy;
     private Querydsl querydsl;
     private EntityManager entityManager;
     private JPAQueryFactory queryFactory;
+    private CountCache countCache;
+    private PageQueryExecutor pageQueryExecutor;
+    private MeterRegistry meterRegistry;
+    private SortPolicy.Unindexed unindexedSort;
+    private QueryDeadline queryDeadline;
 
 
     public Querydsl4RepositorySupport(Class<?> domainClass) {
+        this(domainClass, null);
+    }
+
+    /**
+     * sortPolicy 가 있으면 Pageable 의 Sort 를 그 정책으로 바꿔 정렬한다. 없으면 Sort 속성을 엔티티 경로로 그대로 정렬한다.
+     */
+    public Querydsl4RepositorySupport(Class<?> domainClass, SortPolicy sortPolicy) {
         Assert.notNull(domainClass, "Domain class must not be null!!");
         this.domainClass = domainClass;
+        this.sortPolicy = sortPolicy;
     }
 
     @Autowired
@@ -45,11 +64,40 @@ public class Querydsl4RepositorySupport {
         this.queryFactory = new JPAQueryFactory(entityManager);
     }
 
+    @Autowired
+    public void setCountCache(CountCache countCache) {
+        this.countCache = countCache;
+    }
+
+    @Autowired
+    public void setPageQueryExecutor(PageQueryExecutor pageQueryExecutor) {
+        this.pageQueryExecutor = pageQueryExecutor;
+    }
+
+    @Autowired
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Autowired
+    public void setUnindexedSort(@Value("${querydsl.sort.unindexed:REJECT}") SortPolicy.Unindexed unindexedSort) {
+        this.unindexedSort = unindexedSort;
+    }
+
+    @Autowired
+    public void setQueryDeadline(QueryDeadline queryDeadline) {
+        this.queryDeadline = queryDeadline;
+    }
+
     @PostConstruct
     public void validate() {
         Assert.notNull(entityManager, "EntityManager must not be null!!");
         Assert.notNull(querydsl, "querydsl must not be null!!");
         Assert.notNull(queryFactory, "queryFactory must not be null!!");
+        Assert.notNull(countCache, "countCache must not be null!!");
+        Assert.notNull(pageQueryExecutor, "pageQueryExecutor must not be null!!");
+        Assert.notNull(meterRegistry, "meterRegistry must not be null!!");
+        Assert.notNull(queryDeadline, "queryDeadline must not be null!!");
     }
 
     protected JPAQueryFactory getQueryFactory() {
@@ -68,18 +116,123 @@ public class Querydsl4RepositorySupport {
         return getQueryFactory().selectFrom(from);
     }
 
+    /**
+     * fetchPlan 의 fetch join 을 추가한 쿼리를 만든다. batch 연관관계는 {@link #fetch(JPQLQuery, FetchPlan)} 로 조회해야 초기화된다.
+     */
+    protected <T> JPAQuery<T> selectFrom(EntityPath<T> from, FetchPlan fetchPlan) {
+        return fetchPlan.applyTo(selectFrom(from));
+    }
+
+    protected <T> List<T> fetch(JPQLQuery<T> query, FetchPlan fetchPlan) {
+        List<T> rows = query.fetch();
+        fetchPlan.initialize(entityManager, rows);
+        return rows;
+    }
+
+    /**
+     * content 쿼리에서 불필요한 join 을 제거한 count 쿼리를 만든다. {@link CountQueryBuilder}
+     * 시간 예산은 걸지 않으므로 실행 직전에 {@link #timed} 를 거친다.
+     */
+    protected JPAQuery<Long> countQuery(JPAQuery<?> contentQuery) {
+        return CountQueryBuilder.from(entityManager, contentQuery);
+    }
+
+    /**
+     * 요청의 쿼리 시간 예산이 남은 시간을 query timeout 으로 건다. {@link QueryDeadline}
+     * 남은 시간과 취소할 Session 은 부른 시점의 것이므로 쿼리를 만들 때가 아니라 실행 직전에 부른다.
+     * <pre>
+     * timed(query).fetch()
+     * </pre>
+     */
+    protected <Q extends JPQLQuery<?>> Q timed(Q query) {
+        if (query instanceof AbstractJPAQuery) {
+            queryDeadline.apply((AbstractJPAQuery<?, ?>) query);
+        }
+        return query;
+    }
+
+    /**
+     * query 에 Pageable 의 정렬과 offset, limit 을 적용한다.
+     * 인덱스로 정렬할 수 없는 Sort 는 querydsl.sort.unindexed 에 따라 IllegalArgumentException 으로 거절(웹에서는 400)하거나 빼고 정렬하며,
+     * repository.sort.unindexed 로 센다. 시간 예산은 실행 직전에 {@link #timed} 로 건다.
+     */
+    protected <T> JPQLQuery<T> paginate(Pageable pageable, JPQLQuery<T> query) {
+        if (sortPolicy == null) {
+            return getQuerydsl().applyPagination(pageable, query);
+        }
+
+        SortPolicy.Resolution resolution = sortPolicy.resolve(pageable.getSort());
+        if (!resolution.getUnindexed().isEmpty()) {
+            boolean reject = unindexedSort == SortPolicy.Unindexed.REJECT;
+            meterRegistry.counter("repository.sort.unindexed",
+                    "repository", getClass().getSimpleName(),
+                    "action", reject ? "rejected" : "downgraded").increment();
+            if (reject) {
+                throw new IllegalArgumentException(
+                        "정렬할 수 없습니다: " + resolution.getUnindexed() + " (정렬 키는 " + sortPolicy.describe() + " 중 하나)");
+            }
+        }
+
+        query.orderBy(resolution.getOrderBy());
+        return pageable.isUnpaged() ? query : query.offset(pageable.getOffset()).limit(pageable.getPageSize());
+    }
+
     protected <T> Page<T> applyPagination(Pageable pageable, Function<JPAQueryFactory, JPAQuery> contentQuery) {
         JPAQuery jpaQuery = contentQuery.apply(getQueryFactory());
-        List<T> content = getQuerydsl().applyPagination(pageable, jpaQuery).fetch();
+        JPAQuery<Long> countResult = countQuery(jpaQuery);
+        JPQLQuery<T> content = paginate(pageable, jpaQuery);
 
-        return PageableExecutionUtils.getPage(content, pageable, jpaQuery::fetchCount);
+        return pageQueryExecutor.getPage(() -> timed(content).fetch(), pageable, () -> timed(countResult).fetchOne());
     }
 
     protected <T> Page<T> applyPagination(Pageable pageable, Function<JPAQueryFactory, JPAQuery> contentQuery, Function<JPAQueryFactory, JPAQuery> countQuery) {
         JPAQuery jpaContentQuery = contentQuery.apply(getQueryFactory());
-        List<T> content = getQuerydsl().applyPagination(pageable, jpaContentQuery).fetch();
+        JPAQuery countResult = countQuery.apply(getQueryFactory());
+        JPQLQuery<T> content = paginate(pageable, jpaContentQuery);
+
+        return pageQueryExecutor.getPage(() -> timed(content).fetch(), pageable, () -> timed(countResult).fetchCount());
+    }
 
+    /**
+     * countKey 가 같으면 count 쿼리 결과를 {@link CountCache} 에서 재사용한다.
+     * countKey 는 검색 조건처럼 count 결과를 결정하는 값이어야 한다.
+     */
+    protected <T> Page<T> applyPagination(Pageable pageable, Object countKey, Function<JPAQueryFactory, JPAQuery> contentQuery) {
+        JPAQuery jpaQuery = contentQuery.apply(getQueryFactory());
+        JPAQuery<Long> countResult = countQuery(jpaQuery);
+        JPQLQuery<T> content = paginate(pageable, jpaQuery);
+
+        return pageQueryExecutor.getPage(() -> timed(content).fetch(), pageable,
+                () -> countCache.get(Arrays.asList(domainClass, countKey), () -> timed(countResult).fetchOne()));
+    }
+
+    /**
+     * content 쿼리에 fetchPlan 을 적용한다. fetch join 은 count 쿼리에서 빠진다.
+     */
+    protected <T> Page<T> applyPagination(Pageable pageable, FetchPlan fetchPlan, Function<JPAQueryFactory, JPAQuery> contentQuery) {
+        return applyPagination(pageable, null, fetchPlan, contentQuery);
+    }
+
+    /**
+     * countKey 가 null 이면 count 를 캐시하지 않는다.
+     */
+    protected <T> Page<T> applyPagination(Pageable pageable, Object countKey, FetchPlan fetchPlan, Function<JPAQueryFactory, JPAQuery> contentQuery) {
+        Assert.isTrue(fetchPlan.isPageable(), "컬렉션 fetch join 은 페이징할 수 없습니다. FetchPlan.batch 를 사용하세요.");
+        JPAQuery jpaQuery = fetchPlan.applyTo(contentQuery.apply(getQueryFactory()));
+        JPAQuery<Long> countResult = countQuery(jpaQuery);
+        LongSupplier total = countKey == null ? () -> timed(countResult).fetchOne()
+                : () -> countCache.get(Arrays.asList(domainClass, countKey), () -> timed(countResult).fetchOne());
+        JPQLQuery<T> content = paginate(pageable, jpaQuery);
+
+        return pageQueryExecutor.getPage(() -> fetch(timed(content), fetchPlan), pageable, total);
+    }
+
+    protected <T> Page<T> applyPagination(Pageable pageable, Object countKey, Function<JPAQueryFactory, JPAQuery> contentQuery, Function<JPAQueryFactory, JPAQuery> countQuery) {
+        JPAQuery jpaContentQuery = contentQuery.apply(getQueryFactory());
         JPAQuery countResult = countQuery.apply(getQueryFactory());
-        return PageableExecutionUtils.getPage(content, pageable, countResult::fetchCount);
+        JPQLQuery<T> content = paginate(pageable, jpaContentQuery);
+
+        return pageQueryExecutor.getPage(() -> timed(content).fetch(), pageable,
+                () -> countCache.get(Arrays.asList(domainClass, countKey), () -> timed(countResult).fetchCount()));
     }
 }
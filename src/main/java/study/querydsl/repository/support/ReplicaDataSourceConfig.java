@@ -0,0 +1,73 @@
+package study.querydsl.repository.support;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * querydsl.replica.enabled=true 이면 DataSource 를 {@link ReplicaRoutingDataSource},
+ * 트랜잭션 매니저를 {@link ReplicaRoutingTransactionManager} 로 바꾼다.
+ * primary 는 spring.datasource.*, 복제본은 querydsl.replica.urls 로 만들고 풀 설정은 둘 다 spring.datasource.hikari.* 를 쓴다.
+ * <p>
+ * 로컬에서는 두 번째 H2 DB 를 복제본으로 쓴다. H2 는 복제를 하지 않으므로 복제본에 primary 의 테이블
+ * (member, team, member_team_view, replica_heartbeat) 을 CREATE LINKED TABLE 로 만들어 흉내낸다.
+ */
+@Configuration
+@ConditionalOnProperty(name = "querydsl.replica.enabled", havingValue = "true")
+public class ReplicaDataSourceConfig {
+
+    @Bean
+    public ReplicaRoutingDataSource dataSource(DataSourceProperties properties,
+                                               Environment environment,
+                                               MeterRegistry meterRegistry,
+                                               @Value("${querydsl.replica.username:${spring.datasource.username:}}") String username,
+                                               @Value("${querydsl.replica.password:${spring.datasource.password:}}") String password,
+                                               @Value("${querydsl.replica.max-lag-millis:1000}") long maxLagMillis,
+                                               @Value("${querydsl.replica.retry-millis:5000}") long retryMillis,
+                                               @Value("${querydsl.replica.heartbeat-millis:500}") long heartbeatMillis) {
+        Binder binder = Binder.get(environment);
+        List<String> urls = binder.bind("querydsl.replica.urls", Bindable.listOf(String.class)).orElse(Collections.emptyList());
+        Assert.notEmpty(urls, "querydsl.replica.urls must not be empty");
+
+        HikariDataSource primary = hikari(binder, properties.determineUrl(), properties.determineUsername(), properties.determinePassword(), "primary");
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < urls.size(); i++) {
+            String name = "replica-" + i;
+            replicas.put(name, hikari(binder, urls.get(i), username, password, name));
+        }
+        return new ReplicaRoutingDataSource(primary, replicas, maxLagMillis, retryMillis, heartbeatMillis, meterRegistry);
+    }
+
+    @Bean
+    public ReplicaRoutingTransactionManager transactionManager(ObjectProvider<TransactionManagerCustomizers> customizers) {
+        ReplicaRoutingTransactionManager transactionManager = new ReplicaRoutingTransactionManager();
+        customizers.ifAvailable(c -> c.customize(transactionManager));
+        return transactionManager;
+    }
+
+    private HikariDataSource hikari(Binder binder, String url, String username, String password, String poolName) {
+        HikariDataSource dataSource = new HikariDataSource();
+        binder.bind("spring.datasource.hikari", Bindable.ofInstance(dataSource));
+        dataSource.setJdbcUrl(url);
+        dataSource.setUsername(username);
+        dataSource.setPassword(password);
+        dataSource.setPoolName(poolName);
+        return dataSource;
+    }
+}
@@ -0,0 +1,206 @@
+package study.querydsl.repository.support;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 읽기 전용 트랜잭션(@Transactional(readOnly = true))은 복제본으로, 나머지는 primary 로 보내는 DataSource.
+ * <p>
+ * 읽기 전용 트랜잭션은 시작할 때(doBegin) 커넥션을 얻는데 그때는 읽기 전용 여부가 아직 TransactionSynchronizationManager 에 없으므로
+ * {@link ReplicaRoutingTransactionManager} 가 알려준 값으로 고른다.
+ * 쓰기 트랜잭션 안에서 호출한 읽기 전용 메서드는 바깥 트랜잭션에 참여하므로 primary 에서 자기 쓰기를 읽는다.
+ * <p>
+ * 복제본은 돌아가며 쓴다. 커넥션을 얻지 못한 복제본은 retryMillis 동안이나 heartbeat 를 다시 읽을 때까지 빼고
+ * 다음 복제본이나 primary 를 쓴다.
+ * 지연은 primary 의 replica_heartbeat 에 heartbeatMillis 마다 현재 시각을 쓰고 복제본에서 읽은 값과의 차이로 잰다.
+ * 지연이 maxLagMillis 를 넘거나 아직 재지 못한 복제본은 쓰지 않는다.
+ * <p>
+ * Member/Team 변경({@link MemberTeamChangedEvent}) 뒤에는 그 뒤에 쓴 heartbeat 가 보이는 복제본만 쓴다.
+ * 그 전에는 읽기 전용 트랜잭션도 primary 로 보낸다. 커밋 후 비운 캐시와 새 ETag 에 아직 복제되지 않은 이전 행이 담기지 않도록 한다.
+ * (이 인스턴스의 쓰기만 안다)
+ * <p>
+ * 라우팅은 datasource.route (target=primary|replica), 복제본 실패는 datasource.replica.failures,
+ * 지연은 datasource.replica.lag (ms) 로 노출한다.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+
+    private static final String CREATE_HEARTBEAT = "create table if not exists replica_heartbeat (id int primary key, updated_at bigint not null)";
+    private static final String UPDATE_HEARTBEAT = "update replica_heartbeat set updated_at = ? where id = 1";
+    private static final String INSERT_HEARTBEAT = "insert into replica_heartbeat (id, updated_at) values (1, ?)";
+    private static final String SELECT_HEARTBEAT = "select updated_at from replica_heartbeat where id = 1";
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final long maxLagMillis;
+    private final long retryMillis;
+    private final ThreadPoolTaskScheduler scheduler;
+
+    private final Counter primaryRoutes;
+    private final Counter replicaRoutes;
+
+    //마지막 Member/Team 변경 시각. 복제본의 heartbeat 가 이보다 뒤여야 쓴다.
+    private volatile long lastWriteAt;
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, long maxLagMillis, long retryMillis,
+                                    long heartbeatMillis, MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.maxLagMillis = maxLagMillis;
+        this.retryMillis = retryMillis;
+        this.primaryRoutes = meterRegistry.counter("datasource.route", "target", "primary");
+        this.replicaRoutes = meterRegistry.counter("datasource.route", "target", "replica");
+        replicas.forEach((name, dataSource) -> {
+            Replica replica = new Replica(name, dataSource, meterRegistry.counter("datasource.replica.failures", "replica", name));
+            Gauge.builder("datasource.replica.lag", replica, r -> r.lagMillis == Long.MAX_VALUE ? Double.NaN : r.lagMillis)
+                    .tag("replica", name)
+                    .register(meterRegistry);
+            this.replicas.add(replica);
+        });
+
+
+        new JdbcTemplate(primary).execute(CREATE_HEARTBEAT);
+        this.scheduler = new ThreadPoolTaskScheduler();
+        this.scheduler.setThreadNamePrefix("replica-heartbeat-");
+        this.scheduler.initialize();
+        this.scheduler.scheduleWithFixedDelay(this::checkReplicas, heartbeatMillis);
+    }
+
+    /**
+     * primary 에 heartbeat 를 쓰고 복제본마다 지연을 다시 잰다.
+     */
+    public void checkReplicas() {
+        long now = System.currentTimeMillis();
+        try {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(primary);
+            if (jdbcTemplate.update(UPDATE_HEARTBEAT, now) == 0) {
+                jdbcTemplate.update(INSERT_HEARTBEAT, now);
+            }
+        } catch (RuntimeException e) {
+            log.warn("replica heartbeat write failed", e);
+        }
+
+        for (Replica replica : replicas) {
+            try {
+                Long updatedAt = new JdbcTemplate(replica.dataSource).queryForObject(SELECT_HEARTBEAT, Long.class);
+                replica.lagMillis = updatedAt == null ? Long.MAX_VALUE : Math.max(0, System.currentTimeMillis() - updatedAt);
+                replica.replicatedAt = updatedAt == null ? 0 : updatedAt;
+                //heartbeat 를 읽었으면 다시 쓸 수 있다.
+                replica.downUntil = 0;
+            } catch (RuntimeException e) {
+                replica.fail(e);
+            }
+        }
+    }
+
+    /**
+     * 지금 읽기 전용 트랜잭션을 받을 수 있는 복제본 이름.
+     */
+    public List<String> availableReplicas() {
+        long now = System.currentTimeMillis();
+        List<String> names = new ArrayList<>();
+        for (Replica replica : replicas) {
+            if (replica.isAvailable(now)) {
+                names.add(replica.name);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * 변경 시점과 트랜잭션 종료 후 모두 받는다. 커밋 후에 쓴 heartbeat 가 복제될 때까지 primary 로 읽는다.
+     */
+    @EventListener
+    public void onChange(MemberTeamChangedEvent event) {
+        lastWriteAt = System.currentTimeMillis();
+    }
+
+    @PreDestroy
+    public void shutdown() throws Exception {
+        scheduler.shutdown();
+        close(primary);
+        for (Replica replica : replicas) {
+            close(replica.dataSource);
+        }
+    }
+
+    private static void close(DataSource dataSource) throws Exception {
+        if (dataSource instanceof AutoCloseable) {
+            ((AutoCloseable) dataSource).close();
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Boolean beginning = ReplicaRoutingTransactionManager.beginningReadOnly();
+        boolean readOnly = beginning != null ? beginning : TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        if (readOnly) {
+            for (int i = 0; i < replicas.size(); i++) {
+                Replica replica = replicas.get(Math.floorMod(next.getAndIncrement(), replicas.size()));
+                if (!replica.isAvailable(System.currentTimeMillis())) {
+                    continue;
+                }
+                try {
+                    Connection connection = replica.dataSource.getConnection();
+                    replicaRoutes.increment();
+                    return connection;
+                } catch (SQLException | RuntimeException e) {
+                    //Hikari 는 풀을 만들지 못하면 PoolInitializationException(RuntimeException) 을 던진다.
+                    replica.fail(e);
+                }
+            }
+        }
+        primaryRoutes.increment();
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getConnection();
+    }
+
+    private class Replica {
+
+        private final String name;
+        private final DataSource dataSource;
+        private final Counter failures;
+
+        //아직 재지 않았으면 Long.MAX_VALUE
+        private volatile long lagMillis = Long.MAX_VALUE;
+        //복제본에서 읽은 heartbeat 시각
+        private volatile long replicatedAt;
+        private volatile long downUntil;
+
+        Replica(String name, DataSource dataSource, Counter failures) {
+            this.name = name;
+            this.dataSource = dataSource;
+            this.failures = failures;
+        }
+
+        boolean isAvailable(long now) {
+            return now >= downUntil && lagMillis <= maxLagMillis && replicatedAt > lastWriteAt;
+        }
+
+        void fail(Exception e) {
+            failures.increment();
+            downUntil = System.currentTimeMillis() + retryMillis;
+            log.warn("replica {} unavailable for {} ms: {}", name, retryMillis, e.toString());
+        }
+    }
+}
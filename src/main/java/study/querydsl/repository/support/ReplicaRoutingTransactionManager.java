@@ -0,0 +1,35 @@
+package study.querydsl.repository.support;
+
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+/**
+ * 트랜잭션을 시작하는 동안 읽기 전용 여부를 {@link ReplicaRoutingDataSource} 에 알려주는 JpaTransactionManager.
+ * <p>
+ * 읽기 전용 트랜잭션은 Hibernate 가 doBegin 에서 커넥션을 얻어 끝날 때까지 쓴다.
+ * 이때는 TransactionSynchronizationManager 에 읽기 전용 여부가 아직 없다.
+ * (p6spy 가 커넥션을 얻자마자 메타데이터를 읽으므로 LazyConnectionDataSourceProxy 로 미룰 수도 없다)
+ */
+public class ReplicaRoutingTransactionManager extends JpaTransactionManager {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final ThreadLocal<Boolean> BEGINNING_READ_ONLY = new ThreadLocal<>();
+
+    /**
+     * 트랜잭션을 시작하는 중이면 읽기 전용 여부, 아니면 null.
+     */
+    static Boolean beginningReadOnly() {
+        return BEGINNING_READ_ONLY.get();
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        BEGINNING_READ_ONLY.set(definition.isReadOnly());
+        try {
+            super.doBegin(transaction, definition);
+        } finally {
+            BEGINNING_READ_ONLY.remove();
+        }
+    }
+}
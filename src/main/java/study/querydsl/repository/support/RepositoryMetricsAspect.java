@@ -0,0 +1,91 @@
+package study.querydsl.repository.support;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.CursorPage;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 리포지토리 public 메서드마다 실행 시간, 반환 행 수, 실행한 JDBC 문장 수를 기록한다.
+ * <ul>
+ *     <li>repository.calls (timer, 히스토그램) - method, outcome</li>
+ *     <li>repository.rows - method</li>
+ *     <li>repository.statements - method</li>
+ * </ul>
+ * /actuator/metrics/repository.calls?tag=method:MemberRepositoryImpl.search 처럼 조회한다.
+ * 병렬 count(PageQueryExecutor) 가 다른 스레드에서 실행한 문장은 statements 에 포함되지 않는다.
+ */
+@Aspect
+@Component
+@RequiredArgsConstructor
+public class RepositoryMetricsAspect {
+
+    private final MeterRegistry meterRegistry;
+    private final JdbcStatementCounter statementCounter;
+
+    @Around("execution(public * *(..)) && ("
+            + "within(study.querydsl.repository.MemberRepositoryImpl)"
+            + " || within(study.querydsl.repository.MemberJpaRepository)"
+            + " || within(study.querydsl.repository.support.Querydsl4RepositorySupport+))")
+    public Object record(ProceedingJoinPoint joinPoint) throws Throwable {
+        String method = joinPoint.getSignature().getDeclaringType().getSimpleName() + "." + joinPoint.getSignature().getName();
+
+        long statementsBefore = statementCounter.current();
+        long start = System.nanoTime();
+        String outcome = "success";
+        Object result = null;
+        try {
+            result = joinPoint.proceed();
+            return result;
+        } catch (Throwable e) {
+            outcome = "error";
+            throw e;
+        } finally {
+            Timer.builder("repository.calls")
+                    .tag("method", method)
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+            DistributionSummary.builder("repository.statements")
+                    .tag("method", method)
+                    .register(meterRegistry)
+                    .record(statementCounter.current() - statementsBefore);
+
+            DistributionSummary.builder("repository.rows")
+                    .tag("method", method)
+                    .register(meterRegistry)
+                    .record(rows(result));
+        }
+    }
+
+    private long rows(Object result) {
+        if (result == null) {
+            return 0;
+        }
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Slice) {
+            return ((Slice<?>) result).getNumberOfElements();
+        }
+        if (result instanceof CursorPage) {
+            return ((CursorPage<?>) result).getContent().size();
+        }
+        if (result instanceof Optional) {
+            return ((Optional<?>) result).isPresent() ? 1 : 0;
+        }
+        return 1;
+    }
+}
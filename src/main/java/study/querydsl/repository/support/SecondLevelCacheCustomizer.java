@@ -0,0 +1,60 @@
+package study.querydsl.repository.support;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.stereotype.Component;
+import study.querydsl.entity.Team;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hibernate 2차 캐시 / 쿼리 캐시를 JCache(Caffeine) 로 켠다.
+ * <p>
+ * 영역은 여기서 크기와 TTL 을 정해 미리 만들고, 정하지 않은 영역을 쓰려고 하면 시작할 때 실패한다.
+ * update-timestamps 영역은 쿼리 캐시 무효화에 쓰이므로 퇴출하지 않는다. (테이블당 한 건)
+ * 영역별 통계를 위해 hibernate.generate_statistics 를 켠다. (hibernate.second.level.cache.* 메트릭)
+ */
+@Component
+public class SecondLevelCacheCustomizer implements HibernatePropertiesCustomizer {
+
+    private final CacheManager cacheManager;
+
+    public SecondLevelCacheCustomizer(@Value("${querydsl.team-cache.maximum-size:10000}") long maximumSize,
+                                      @Value("${querydsl.team-cache.ttl-seconds:600}") long ttlSeconds) {
+        //테스트처럼 컨텍스트가 여러 개 떠도 영역이 겹치지 않도록 CacheManager 를 따로 만든다.
+        this.cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager(URI.create("querydsl-" + System.identityHashCode(this)), getClass().getClassLoader());
+
+        cacheManager.createCache(Team.CACHE_REGION, bounded(maximumSize, ttlSeconds));
+        cacheManager.createCache(Team.ID_BY_NAME_CACHE_REGION, bounded(maximumSize, ttlSeconds));
+        cacheManager.createCache(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME, bounded(maximumSize, ttlSeconds));
+        cacheManager.createCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME, new CaffeineConfiguration<>());
+    }
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        hibernateProperties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+        hibernateProperties.put(AvailableSettings.USE_QUERY_CACHE, true);
+        hibernateProperties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+        hibernateProperties.put(ConfigSettings.CACHE_MANAGER, cacheManager);
+        hibernateProperties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+        hibernateProperties.put(AvailableSettings.GENERATE_STATISTICS, true);
+    }
+
+    private static CaffeineConfiguration<Object, Object> bounded(long maximumSize, long ttlSeconds) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setMaximumSize(OptionalLong.of(maximumSize));
+        configuration.setExpireAfterWrite(OptionalLong.of(TimeUnit.SECONDS.toNanos(ttlSeconds)));
+        return configuration;
+    }
+}
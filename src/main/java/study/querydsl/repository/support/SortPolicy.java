@@ -0,0 +1,93 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.dsl.ComparableExpressionBase;
+import lombok.Getter;
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 클라이언트 Sort 를 인덱스가 있는 컬럼의 정렬로 바꾼다.
+ * <p>
+ * 허용한 키 하나와 유일한 보조 키(tiebreaker)로만 정렬한다. (키, 보조 키) 는 인덱스 순서와 같아 filesort 없이 읽고,
+ * 같은 값이 많아도 페이지 사이에 행이 빠지거나 겹치지 않는다.
+ * 허용하지 않은 속성과 두 번째 이후의 정렬 키는 {@link #resolve(Sort)} 결과의 unindexed 로 돌려준다.
+ */
+public class SortPolicy {
+
+    /**
+     * 인덱스로 정렬할 수 없는 요청 처리. REJECT 는 400 으로 거절하고 DOWNGRADE 는 해당 정렬을 빼고 조회한다.
+     */
+    public enum Unindexed {
+        REJECT, DOWNGRADE
+    }
+
+    private final String tiebreakerProperty;
+    private final ComparableExpressionBase<?> tiebreaker;
+    private final Map<String, ComparableExpressionBase<?>> keys = new LinkedHashMap<>();
+
+    private SortPolicy(String property, ComparableExpressionBase<?> tiebreaker) {
+        this.tiebreakerProperty = property;
+        this.tiebreaker = tiebreaker;
+        keys.put(property, tiebreaker);
+    }
+
+    /**
+     * 유일한 컬럼(PK)을 보조 키로 하는 정책. 보조 키도 정렬 키로 허용한다.
+     */
+    public static SortPolicy tiebreaker(String property, ComparableExpressionBase<?> path) {
+        return new SortPolicy(property, path);
+    }
+
+    /**
+     * property 정렬을 허용한다. path 는 (path, 보조 키) 순서로 읽을 수 있는 인덱스가 있어야 한다.
+     */
+    public SortPolicy allow(String property, ComparableExpressionBase<?> path) {
+        keys.put(property, path);
+        return this;
+    }
+
+    public Resolution resolve(Sort sort) {
+        Sort.Order primary = null;
+        List<Sort.Order> unindexed = new ArrayList<>();
+        for (Sort.Order order : sort) {
+            if (primary == null && keys.containsKey(order.getProperty())) {
+                primary = order;
+            } else if (!order.getProperty().equals(tiebreakerProperty)) { //보조 키는 항상 붙으므로 따로 요청해도 된다.
+                unindexed.add(order);
+            }
+        }
+
+        //보조 키도 같은 방향이어야 인덱스를 한 방향으로 읽는다.
+        boolean descending = primary != null && primary.isDescending();
+        List<OrderSpecifier<?>> orderBy = new ArrayList<>();
+        if (primary != null && !primary.getProperty().equals(tiebreakerProperty)) {
+            orderBy.add(orderBy(keys.get(primary.getProperty()), descending));
+        }
+        orderBy.add(orderBy(tiebreaker, descending));
+        return new Resolution(orderBy.toArray(new OrderSpecifier<?>[0]), unindexed);
+    }
+
+    private static OrderSpecifier<?> orderBy(ComparableExpressionBase<?> path, boolean descending) {
+        return descending ? path.desc() : path.asc();
+    }
+
+    public String describe() {
+        return String.join(", ", keys.keySet());
+    }
+
+    @Getter
+    public static class Resolution {
+        private final OrderSpecifier<?>[] orderBy;
+        private final List<Sort.Order> unindexed;
+
+        private Resolution(OrderSpecifier<?>[] orderBy, List<Sort.Order> unindexed) {
+            this.orderBy = orderBy;
+            this.unindexed = unindexed;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package study.querydsl.repository.support;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Arrays;
+
+/**
+ * Team 2차 캐시 영역(엔티티, 이름 -> id)을 Team 쓰기마다 비우고 영역별 적중률을 hibernate.cache.region.hit.ratio 로 노출한다.
+ * <p>
+ * Hibernate 를 거친 쓰기는 Hibernate 가 무효화하지만 JDBC 로 쓴 변경(MemberBulkLoader)은 알 수 없으므로
+ * {@link MemberTeamChangedEvent} 로 직접 비운다. Team 쓰기는 드물어 전체를 비워도 된다.
+ */
+@Component
+public class TeamCache {
+
+    private final SessionFactory sessionFactory;
+
+    public TeamCache(EntityManagerFactory emf, MeterRegistry meterRegistry) {
+        this.sessionFactory = emf.unwrap(SessionFactory.class);
+
+        Statistics statistics = sessionFactory.getStatistics();
+        for (String region : Arrays.asList(Team.CACHE_REGION, Team.ID_BY_NAME_CACHE_REGION)) {
+            Gauge.builder("hibernate.cache.region.hit.ratio", statistics, s -> hitRatio(s.getCacheRegionStatistics(region)))
+                    .tag("region", region)
+                    .register(meterRegistry);
+        }
+    }
+
+    @EventListener
+    public void evict(MemberTeamChangedEvent event) {
+        if (event.getEntityType() == Team.class) {
+            sessionFactory.getCache().evictEntityData(Team.class);
+            sessionFactory.getCache().evictQueryRegion(Team.ID_BY_NAME_CACHE_REGION);
+        }
+    }
+
+    private static double hitRatio(CacheRegionStatistics statistics) {
+        if (statistics == null) {
+            return 0;
+        }
+        long requests = statistics.getHitCount() + statistics.getMissCount();
+        return requests == 0 ? 0 : (double) statistics.getHitCount() / requests;
+    }
+}
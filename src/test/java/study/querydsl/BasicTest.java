@@ -299,6 +299,7 @@ class BasicTest {
                                 .from(memberSub)
                                 .where(memberSub.age.gt(10))
                 ))
+                .orderBy(member.id.asc())
                 .fetch();
 
         assertThat(result).extracting("age")
@@ -0,0 +1,91 @@
+package study.querydsl.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.support.JdbcStatementCounter;
+
+import javax.persistence.EntityManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class MemberControllerTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    JdbcStatementCounter statementCounter;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Test
+    public void notModifiedWithoutQuery() throws Exception {
+        String etag = mockMvc.perform(get("/v2/members").param("teamName", "teamA").param("size", "5"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(etag).isNotNull();
+
+        long before = statementCounter.current();
+        mockMvc.perform(get("/v2/members").param("teamName", "teamA").param("size", "5")
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+        assertThat(statementCounter.current() - before).isZero();
+
+        //다른 조건, 다른 페이지는 다른 ETag
+        mockMvc.perform(get("/v2/members").param("teamName", "teamB").param("size", "5")
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/v3/members").param("teamName", "teamA").param("size", "5")
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void modifiedAfterWrite() throws Exception {
+        String etag = mockMvc.perform(get("/v1/members").param("username", "member1"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        Long teamId = transaction.execute(status -> {
+            Team team = new Team("etagTeam");
+            em.persist(team);
+            return team.getId();
+        });
+        try {
+            mockMvc.perform(get("/v1/members").param("username", "member1")
+                            .header(HttpHeaders.IF_NONE_MATCH, etag))
+                    .andExpect(status().isOk());
+        } finally {
+            transaction.executeWithoutResult(status -> em.remove(em.find(Team.class, teamId)));
+        }
+    }
+
+    @Test
+    public void badCursorRequestIsBadRequest() throws Exception {
+        mockMvc.perform(get("/v5/members").param("size", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/v5/members").param("cursor", "not-a-cursor"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void unindexedSortIsBadRequest() throws Exception {
+        mockMvc.perform(get("/v4/members").param("sort", "team.name"))
+                .andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,115 @@
+package study.querydsl.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class MemberExportControllerTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    Long teamId;
+    Long commaId;
+    Long quoteId;
+    Long plainId;
+
+    @BeforeEach
+    void before() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Team team = new Team("export,team");
+            em.persist(team);
+            Member comma = new Member("export,a", 10, team);
+            Member quote = new Member("export\"b", 20);
+            Member plain = new Member("exportc", 30, team);
+            em.persist(comma);
+            em.persist(quote);
+            em.persist(plain);
+            teamId = team.getId();
+            commaId = comma.getId();
+            quoteId = quote.getId();
+            plainId = plain.getId();
+        });
+    }
+
+    @AfterEach
+    void after() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            em.createQuery("delete from Member m where m.username like 'export%'").executeUpdate();
+            em.remove(em.find(Team.class, teamId));
+        });
+    }
+
+    @Test
+    public void exportCsv() throws Exception {
+        MvcResult result = mockMvc.perform(get("/v1/members/export.csv").param("usernamePrefix", "export"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "text/csv;charset=UTF-8"))
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"members.csv\""))
+                .andReturn();
+
+        String body = result.getResponse().getContentAsString(StandardCharsets.UTF_8);
+        assertThat(body).endsWith("\n");
+        List<String> lines = Arrays.asList(body.split("\n"));
+        assertThat(lines.get(0)).isEqualTo("memberId,username,age,teamId,teamName");
+        //쉼표와 따옴표가 있는 값은 따옴표로 감싸고 따옴표는 두 번 쓴다. 팀이 없으면 빈 칸이다.
+        assertThat(lines.subList(1, lines.size())).containsExactlyInAnyOrder(
+                commaId + ",\"export,a\",10," + teamId + ",\"export,team\"",
+                quoteId + ",\"export\"\"b\",20,,",
+                plainId + ",exportc,30," + teamId + ",\"export,team\"");
+    }
+
+    @Test
+    public void exportNdjson() throws Exception {
+        MvcResult result = mockMvc.perform(get("/v1/members/export.ndjson").param("usernamePrefix", "export"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/x-ndjson;charset=UTF-8"))
+                .andReturn();
+
+        String body = result.getResponse().getContentAsString(StandardCharsets.UTF_8);
+        //한 줄에 JSON 하나, 줄마다 개행으로 끝난다.
+        assertThat(body).endsWith("\n");
+        List<String> usernames = new ArrayList<>();
+        for (String line : body.split("\n")) {
+            JsonNode node = objectMapper.readTree(line);
+            usernames.add(node.get("username").asText());
+            if (node.get("memberId").asLong() == quoteId) {
+                assertThat(node.get("teamId").isNull()).isTrue();
+            }
+        }
+        assertThat(usernames).containsExactlyInAnyOrder("export,a", "export\"b", "exportc");
+    }
+}
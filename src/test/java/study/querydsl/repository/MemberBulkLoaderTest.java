@@ -0,0 +1,74 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.validation.BindValidationException;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@Transactional
+class MemberBulkLoaderTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberBulkLoader memberBulkLoader;
+
+    @Test
+    public void load() {
+        long before = count();
+
+        MemberSeedProperties properties = new MemberSeedProperties();
+        properties.setMemberCount(2500);
+        properties.setTeamCount(3);
+        properties.setAgeDistribution(MemberSeedProperties.AgeDistribution.NORMAL);
+        properties.setBatchSize(700);
+
+        assertThat(memberBulkLoader.load(properties)).isEqualTo(2500);
+        assertThat(count()).isEqualTo(before + 2500);
+
+        Long outOfRange = em.createQuery("select count(m) from Member m where m.username like 'member%' and (m.age < 0 or m.age > 99)", Long.class)
+                .getSingleResult();
+        assertThat(outOfRange).isZero();
+
+        //JPA 로 저장해도 JDBC 로 넣은 id 와 겹치지 않는다.
+        Team team = new Team("teamZ");
+        em.persist(team);
+        em.persist(new Member("afterLoad", 10, team));
+        em.flush();
+
+        assertThat(count()).isEqualTo(before + 2501);
+    }
+
+    @Test
+    public void rejectInvalidSeedProperties() {
+        new ApplicationContextRunner()
+                .withUserConfiguration(SeedPropertiesConfig.class)
+                .withPropertyValues("querydsl.seed.age-min=50", "querydsl.seed.age-max=10")
+                .run(context -> assertThat(context).hasFailed()
+                        .getFailure().hasRootCauseInstanceOf(BindValidationException.class));
+
+        MemberSeedProperties properties = new MemberSeedProperties();
+        properties.setBatchSize(0);
+        assertThatThrownBy(() -> memberBulkLoader.load(properties)).hasCauseInstanceOf(IllegalArgumentException.class);
+    }
+
+    @EnableConfigurationProperties(MemberSeedProperties.class)
+    static class SeedPropertiesConfig {
+    }
+
+    private long count() {
+        return em.createQuery("select count(m) from Member m", Long.class).getSingleResult();
+    }
+}
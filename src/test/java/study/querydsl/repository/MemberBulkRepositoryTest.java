@@ -0,0 +1,113 @@
+package study.querydsl.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.repository.support.BulkProgress;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static study.querydsl.entity.QMember.member;
+
+@SpringBootTest(properties = {"querydsl.bulk.chunk-size=10", "spring.jpa.hibernate.ddl-auto=update"})
+class MemberBulkRepositoryTest {
+
+    @Autowired
+    MemberBulkRepository bulkRepository;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void before() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            for (int i = 0; i < 25; i++) {
+                em.persist(new Member("bulk" + i, i));
+            }
+        });
+    }
+
+    @AfterEach
+    void after() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                em.createQuery("delete from Member m where m.username like 'bulk%'").executeUpdate());
+    }
+
+    @Test
+    public void updateInChunks() {
+        List<BulkProgress> progresses = new ArrayList<>();
+
+        BulkProgress result = bulkRepository.update(
+                member.username.startsWith("bulk").and(member.age.lt(20)),
+                update -> update.set(member.age, member.age.add(100)),
+                progresses::add);
+
+        assertThat(result.getRows()).isEqualTo(20);
+        assertThat(result.getChunks()).isEqualTo(2);
+        assertThat(progresses).extracting(BulkProgress::getRows).containsExactly(10L, 20L);
+
+        List<Integer> ages = em.createQuery("select m.age from Member m where m.username like 'bulk%' order by m.id", Integer.class)
+                .getResultList();
+        assertThat(ages).filteredOn(age -> age >= 100).hasSize(20);
+        assertThat(ages).filteredOn(age -> age >= 20 && age < 100).hasSize(5);
+    }
+
+    @Test
+    public void deleteInChunks() {
+        BulkProgress result = bulkRepository.delete(member.username.startsWith("bulk").and(member.age.goe(5)));
+
+        assertThat(result.getRows()).isEqualTo(20);
+        assertThat(result.getChunks()).isEqualTo(2);
+        assertThat(em.createQuery("select count(m) from Member m where m.username like 'bulk%'", Long.class)
+                .getSingleResult()).isEqualTo(5);
+    }
+
+    @Test
+    public void synchronizeManagedMembers() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Member updated = em.createQuery("select m from Member m where m.username = 'bulk3'", Member.class).getSingleResult();
+            Member deleted = em.createQuery("select m from Member m where m.username = 'bulk20'", Member.class).getSingleResult();
+
+            bulkRepository.update(member.username.startsWith("bulk").and(member.age.lt(10)),
+                    update -> update.set(member.age, member.age.add(100)));
+            bulkRepository.delete(member.username.startsWith("bulk").and(member.age.goe(20)).and(member.age.lt(100)));
+
+            assertThat(updated.getAge()).isEqualTo(103);
+            assertThat(em.contains(updated)).isTrue();
+            assertThat(em.contains(deleted)).isFalse();
+        });
+    }
+
+    @Test
+    public void rejectInsideTransactionWithMemberChanges() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Member changed = em.createQuery("select m from Member m where m.username = 'bulk3'", Member.class).getSingleResult();
+            changed.setAge(50);
+            em.flush();
+
+            assertThatThrownBy(() -> bulkRepository.update(member.username.startsWith("bulk"),
+                    update -> update.set(member.age, member.age.add(100))))
+                    .hasCauseInstanceOf(IllegalStateException.class);
+            status.setRollbackOnly();
+        });
+    }
+
+    @Test
+    public void rejectNonPositiveChunkSize() {
+        assertThatThrownBy(() -> new MemberBulkRepository(null, null, transactionManager, new SimpleMeterRegistry(), 0, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,82 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.support.JdbcStatementCounter;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class MemberIngestRepositoryTest {
+
+    @Autowired
+    MemberIngestRepository ingestRepository;
+
+    @Autowired
+    JdbcStatementCounter statementCounter;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void after() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            em.createQuery("delete from Member m where m.username like 'ingest%'").executeUpdate();
+            em.createQuery("delete from Team t where t.name like 'ingest%'").executeUpdate();
+        });
+    }
+
+    @Test
+    public void insertsAreBatched() {
+        List<Team> teams = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            teams.add(new Team("ingestTeam" + i));
+        }
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            members.add(new Member("ingest" + i, i, teams.get(i % 3)));
+        }
+
+        long before = statementCounter.current();
+        ingestRepository.saveAll(teams);
+        ingestRepository.saveAll(members);
+        long statements = statementCounter.current() - before;
+
+        //팀 insert 1 + 회원 insert 3 (50, 50, 20) + 시퀀스 조회. 행마다 문장을 실행하면 123 이상이다.
+        assertThat(statements).isLessThan(10);
+        assertThat(em.createQuery("select count(m) from Member m join m.team t where m.username like 'ingest%' and t.name like 'ingestTeam%'", Long.class)
+                .getSingleResult()).isEqualTo(120);
+    }
+
+    @Test
+    public void detachedEntitiesAreUpdatedWithoutSelect() {
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            members.add(new Member("ingest" + i, i));
+        }
+        ingestRepository.saveAll(members);
+        members.forEach(member -> member.setAge(member.getAge() + 100));
+
+        long before = statementCounter.current();
+        assertThat(ingestRepository.saveAll(members)).isEqualTo(60);
+        long statements = statementCounter.current() - before;
+
+        //update batch 2 (50, 10) + 이름 n-gram 색인 delete/insert batch 2 (MemberUsernameIndex)
+        assertThat(statements).isEqualTo(4);
+        assertThat(em.createQuery("select min(m.age) from Member m where m.username like 'ingest%'", Integer.class)
+                .getSingleResult()).isEqualTo(100);
+    }
+}
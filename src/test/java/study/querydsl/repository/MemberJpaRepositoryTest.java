@@ -14,6 +14,7 @@ import study.querydsl.entity.Team;
 
 import javax.persistence.EntityManager;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -94,6 +95,32 @@ class MemberJpaRepositoryTest {
         }
     }
 
+    @Test
+    public void searchStreamTest() {
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamB");
+
+        List<MemberTeamDto> streamed = new ArrayList<>();
+        memberJpaRepository.searchStream(condition, 2, streamed::add);
+
+        assertThat(streamed).containsExactlyInAnyOrderElementsOf(memberJpaRepository.search(condition));
+    }
 
+    @Test
+    public void searchConditionsTest() {
+
+        //조건 16가지 조합 모두 Querydsl 로 만든 쿼리와 결과가 같아야 한다.
+        for (int mask = 0; mask < 16; mask++) {
+            MemberSearchCondition condition = new MemberSearchCondition();
+            condition.setUsername((mask & 1) != 0 ? "member1" : null);
+            condition.setTeamName((mask & 2) != 0 ? "teamA" : "");
+            condition.setAgeGoe((mask & 4) != 0 ? 50 : null);
+            condition.setAgeLoe((mask & 8) != 0 ? 150 : null);
+
+            assertThat(memberJpaRepository.search(condition))
+                    .containsExactlyInAnyOrderElementsOf(memberJpaRepository.searchByBuilder(condition));
+        }
+    }
 
-}
\ No newline at end of file
+}
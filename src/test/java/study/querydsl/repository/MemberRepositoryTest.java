@@ -6,7 +6,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.CursorPage;
+import study.querydsl.dto.EstimatedPage;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.entity.Member;
@@ -14,9 +17,13 @@ import study.querydsl.entity.QMember;
 import study.querydsl.entity.Team;
 
 import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static study.querydsl.entity.QMember.member;
 
 @SpringBootTest
@@ -29,6 +36,9 @@ class MemberRepositoryTest {
     @Autowired
     MemberRepository memberRepository;
 
+    @Autowired
+    MemberSearchQueries searchQueries;
+
     @BeforeEach
     void contextLoads() {
         Team teamA = new Team("teamA");
@@ -106,4 +116,98 @@ class MemberRepositoryTest {
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    public void searchByCursor() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(100);
+
+        List<Long> expected = memberRepository.search(condition).stream()
+                .sorted(Comparator.comparing(MemberTeamDto::getAge).thenComparing(MemberTeamDto::getMemberId))
+                .map(MemberTeamDto::getMemberId)
+                .collect(Collectors.toList());
+
+        List<Long> forward = new ArrayList<>();
+        CursorPage<MemberTeamDto> page = memberRepository.searchByCursor(condition, MemberSortKey.AGE, null, 3);
+        assertThat(page.hasPrevious()).isFalse();
+        page.getContent().forEach(dto -> forward.add(dto.getMemberId()));
+
+        CursorPage<MemberTeamDto> lastPage = page;
+        while (page.hasNext()) {
+            lastPage = page;
+            page = memberRepository.searchByCursor(condition, MemberSortKey.AGE, page.getNextCursor(), 3);
+            page.getContent().forEach(dto -> forward.add(dto.getMemberId()));
+        }
+
+        assertThat(forward).isEqualTo(expected);
+
+        assertThat(page.hasPrevious()).isTrue();
+        CursorPage<MemberTeamDto> previous = memberRepository.searchByCursor(condition, MemberSortKey.AGE, page.getPreviousCursor(), 3);
+        assertThat(previous.getContent()).isEqualTo(lastPage.getContent());
+        assertThat(previous.hasNext()).isTrue();
+    }
+
+    @Test
+    public void searchByCursorRejectsBadSizeAndCursor() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+
+        //리포지토리는 IllegalArgumentException 을 던지고 (번역되어 원인으로 온다) 웹에서 400 으로 바꾼다.
+        assertThatThrownBy(() -> memberRepository.searchByCursor(condition, MemberSortKey.ID, null, -1))
+                .hasCauseInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> memberRepository.searchByCursor(condition, MemberSortKey.ID, null, 101))
+                .hasCauseInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> memberRepository.searchByCursor(condition, MemberSortKey.ID, "not-a-cursor", 3))
+                .hasCauseInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void searchPageComplexCountInWriteTransaction() {
+        //쓰기 트랜잭션 안에서는 CountCache 를 거치지 않으므로 롤백될 행도 바로 센다.
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+        PageRequest pageRequest = PageRequest.of(0, 1);
+
+        long total = memberRepository.searchPageComplex(condition, pageRequest).getTotalElements();
+        assertThat(memberRepository.searchPageComplex(condition, PageRequest.of(1, 1)).getTotalElements()).isEqualTo(total);
+
+        Team teamA = em.createQuery("select t from Team t where t.name = 'teamA'", Team.class)
+                .setMaxResults(1)
+                .getSingleResult();
+        memberRepository.saveAndFlush(new Member("member5", 10, teamA));
+
+        assertThat(memberRepository.searchPageComplex(condition, pageRequest).getTotalElements()).isEqualTo(total + 1);
+    }
+
+    @Test
+    public void searchSlice() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeLoe(150);
+
+        Slice<MemberTeamDto> first = memberRepository.searchSlice(condition, PageRequest.of(0, 2));
+        assertThat(first.getContent()).extracting(MemberTeamDto::getUsername).containsExactly("member1", "member2");
+        assertThat(first.hasNext()).isTrue();
+
+        Slice<MemberTeamDto> second = memberRepository.searchSlice(condition, PageRequest.of(1, 2));
+        assertThat(second.getContent()).extracting(MemberTeamDto::getUsername).containsExactly("member4");
+        assertThat(second.hasNext()).isFalse();
+    }
+
+    @Test
+    public void searchPageEstimated() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeLoe(150);
+
+        EstimatedPage<MemberTeamDto> first = memberRepository.searchPageEstimated(condition, PageRequest.of(0, 2));
+        assertThat(first.getContent()).hasSize(2);
+        assertThat(first.hasNext()).isTrue();
+        assertThat(first.getTotalElements()).isEqualTo(3);
+        assertThat(first.isTotalExact()).isTrue();
+
+        //마지막 페이지는 count 없이 offset + 건수
+        EstimatedPage<MemberTeamDto> last = memberRepository.searchPageEstimated(condition, PageRequest.of(1, 2));
+        assertThat(last.hasNext()).isFalse();
+        assertThat(last.getTotalElements()).isEqualTo(3);
+
+        assertThat(searchQueries.countUpTo(condition, 2)).isEqualTo(2);
+        assertThat(searchQueries.countUpTo(condition, 10)).isEqualTo(3);
+    }
+}
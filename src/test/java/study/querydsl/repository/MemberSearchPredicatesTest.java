@@ -0,0 +1,134 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Transactional
+class MemberSearchPredicatesTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    MemberTestRepository memberTestRepository;
+
+    @Autowired
+    MemberSearchQueries searchQueries;
+
+    List<Member> members = new ArrayList<>();
+
+    @BeforeEach
+    void before() {
+        Team teamA = new Team("predA");
+        Team teamB = new Team("predB");
+        em.persist(teamA);
+        em.persist(teamB);
+        for (int i = 0; i < 12; i++) {
+            Member member = new Member("pred" + i, i * 5, i % 4 == 0 ? null : i % 2 == 0 ? teamA : teamB);
+            em.persist(member);
+            members.add(member);
+        }
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    public void sameResultsInEveryRepository() {
+        assertSameResults(condition("pred", null, null, null, null, null), m -> true);
+        assertSameResults(condition("pred", null, null, "predA", null, null), m -> teamName(m).equals("predA"));
+        assertSameResults(condition("pred", null, null, null, 10, 30), m -> m.getAge() >= 10 && m.getAge() <= 30);
+        assertSameResults(condition("pred", "ed1", null, null, null, 40), m -> m.getUsername().contains("ed1") && m.getAge() <= 40);
+        //only ageGoe (ageBetween 이 null 을 int 로 풀던 경로)
+        assertSameResults(condition(null, null, null, "predB", 20, null), m -> teamName(m).equals("predB") && m.getAge() >= 20);
+        //아무것도 맞지 않는 like 패턴 문자
+        assertSameResults(condition("pred", "_", null, null, null, null), m -> false);
+        //없는 팀은 항상 거짓 조건으로 결과가 없다.
+        assertSameResults(condition("pred", null, null, "predNone", null, null), m -> false);
+    }
+
+    @Test
+    public void searchMemberFiltersByTeamNameAndAgeRange() {
+        //username 을 팀 이름으로, ageGoe 를 ageLoe 로 쓰면 결과가 없거나 나이 범위가 틀린다.
+        MemberSearchCondition condition = condition(null, null, "pred3", null, null, null);
+        assertThat(ids(memberJpaRepository.searchMember(condition))).containsExactly(members.get(3).getId());
+
+        condition = condition("pred", null, null, "predB", 10, 40);
+        assertThat(ids(memberJpaRepository.searchMember(condition)))
+                .containsExactlyInAnyOrderElementsOf(expected(m -> teamName(m).equals("predB") && m.getAge() >= 10 && m.getAge() <= 40));
+    }
+
+    private void assertSameResults(MemberSearchCondition condition, Predicate<Member> filter) {
+        List<Long> expected = expected(filter);
+
+        List<Long> streamed = new ArrayList<>();
+        memberJpaRepository.searchStream(condition, 10, dto -> streamed.add(dto.getMemberId()));
+        assertThat(streamed).containsExactlyInAnyOrderElementsOf(expected);
+        assertThat(ids(memberJpaRepository.searchMember(condition))).containsExactlyInAnyOrderElementsOf(expected);
+        assertThat(memberIds(searchQueries.search(condition))).containsExactlyElementsOf(expected);
+        assertThat(searchQueries.count(condition)).isEqualTo(expected.size());
+
+        assertThat(memberIds(memberRepository.searchByCursor(condition, MemberSortKey.ID, null, 100).getContent()))
+                .containsExactlyElementsOf(expected);
+
+        PageRequest all = PageRequest.of(0, 100);
+        assertThat(ids(memberTestRepository.searchPageByApplyPage(condition, all).getContent())).containsExactlyInAnyOrderElementsOf(expected);
+        assertThat(memberIds(memberTestRepository.applyPagination1(condition, all).getContent())).containsExactlyInAnyOrderElementsOf(expected);
+        assertThat(ids(memberTestRepository.applyPagination2(condition, all).getContent())).containsExactlyInAnyOrderElementsOf(expected);
+
+        //페이지가 차면 count 쿼리가 같은 조건으로 센다.
+        PageRequest first = PageRequest.of(0, 1);
+        assertThat(memberTestRepository.searchPageByApplyPage(condition, first).getTotalElements()).isEqualTo(expected.size());
+        assertThat(memberTestRepository.applyPagination1(condition, first).getTotalElements()).isEqualTo(expected.size());
+        assertThat(memberTestRepository.applyPagination2(condition, first).getTotalElements()).isEqualTo(expected.size());
+    }
+
+    private List<Long> expected(Predicate<Member> filter) {
+        return members.stream().filter(filter).map(Member::getId).collect(Collectors.toList());
+    }
+
+    private static String teamName(Member member) {
+        return member.getTeam() == null ? "" : member.getTeam().getName();
+    }
+
+    private static List<Long> ids(List<Member> members) {
+        return members.stream().map(Member::getId).collect(Collectors.toList());
+    }
+
+    private static List<Long> memberIds(List<MemberTeamDto> rows) {
+        return rows.stream().map(MemberTeamDto::getMemberId).collect(Collectors.toList());
+    }
+
+    private static MemberSearchCondition condition(String prefix, String contains, String username, String teamName, Integer ageGoe, Integer ageLoe) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsernamePrefix(prefix);
+        condition.setUsernameContains(contains);
+        condition.setUsername(username);
+        condition.setTeamName(teamName);
+        condition.setAgeGoe(ageGoe);
+        condition.setAgeLoe(ageLoe);
+        return condition;
+    }
+}
@@ -0,0 +1,205 @@
+package study.querydsl.repository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+
+@SpringBootTest(properties = {"querydsl.snapshot.enabled=true", "spring.jpa.hibernate.ddl-auto=update"})
+class MemberSnapshotTest {
+
+    @Autowired
+    MemberSnapshot snapshot;
+
+    @Autowired
+    MemberSearchQueries searchQueries;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void before() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Team teamA = new Team("snapshotA");
+            Team teamB = new Team("snapshotB");
+            em.persist(teamA);
+            em.persist(teamB);
+            for (int i = 0; i < 20; i++) {
+                em.persist(new Member("snapshot" + i % 7, i * 5, i % 5 == 0 ? null : i % 2 == 0 ? teamA : teamB));
+            }
+        });
+    }
+
+    @AfterEach
+    void after() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            em.createQuery("delete from Member m where m.username like 'snapshot%'").executeUpdate();
+            em.createQuery("delete from Team t where t.name like 'snapshot%'").executeUpdate();
+        });
+    }
+
+    @Test
+    public void sameResultsAsQuerydsl() {
+        snapshot.reload();
+
+        for (MemberSearchCondition condition : Arrays.asList(
+                condition(null, null, null, null),
+                condition(null, "snapshotA", null, null),
+                condition(null, "snapshotB", 35, 60),
+                condition("snapshot3", null, null, null),
+                condition("snapshot3", "snapshotB", 0, 99),
+                condition(null, null, 10, 20),
+                condition("", "", null, null),
+                condition("nobody", null, null, null),
+                condition(null, "nobody", null, null),
+                partial("snapshot1", null, null),
+                partial("snapshot", "t3", null),
+                partial(null, "apshot", "snapshotB"),
+                partial(null, "6", null))) {
+
+            assertThat(snapshot.search(condition)).isEqualTo(searchQueries.search(condition));
+
+            Page<MemberTeamDto> page = snapshot.searchPage(condition, PageRequest.of(1, 3));
+            assertThat(page.getContent()).isEqualTo(searchQueries.search(condition, 3L, 3));
+            assertThat(page.getTotalElements()).isEqualTo(searchQueries.count(condition));
+        }
+    }
+
+    @Test
+    public void incrementalRefresh() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        MemberSearchCondition condition = condition("snapshotMember", null, null, null);
+
+        Long[] ids = tx.execute(status -> {
+            Team team = new Team("snapshotTeam");
+            em.persist(team);
+            Member member = new Member("snapshotMember", 33, team);
+            em.persist(member);
+            return new Long[]{member.getId(), team.getId()};
+        });
+        try {
+            List<MemberTeamDto> inserted = snapshot.search(condition);
+            assertThat(inserted).extracting(MemberTeamDto::getTeamName).containsExactly("snapshotTeam");
+
+            tx.executeWithoutResult(status -> em.find(Team.class, ids[1]).setName("snapshotTeam2"));
+            assertThat(snapshot.search(condition)).extracting(MemberTeamDto::getTeamName).containsExactly("snapshotTeam2");
+
+            tx.executeWithoutResult(status -> {
+                em.find(Member.class, ids[0]).setAge(44);
+                status.setRollbackOnly();
+            });
+            assertThat(snapshot.search(condition)).extracting(MemberTeamDto::getAge).containsExactly(33);
+        } finally {
+            tx.executeWithoutResult(status -> {
+                em.remove(em.find(Member.class, ids[0]));
+                em.remove(em.find(Team.class, ids[1]));
+            });
+        }
+        assertThat(snapshot.search(condition)).isEmpty();
+    }
+
+    @Test
+    public void concurrentCommitsEndWithLatestValue() throws Exception {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        MemberSearchCondition condition = condition("snapshotRace", null, null, null);
+        Long id = tx.execute(status -> {
+            Member member = new Member("snapshotRace", 0);
+            em.persist(member);
+            return member.getId();
+        });
+
+        //여러 스레드가 같은 회원을 커밋하고 커밋 후 반영이 서로 겹친다.
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 1; i <= 40; i++) {
+                int age = i;
+                futures.add(executor.submit(() -> tx.executeWithoutResult(status -> em.find(Member.class, id).setAge(age))));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Integer age = tx.execute(status -> em.find(Member.class, id).getAge());
+        assertThat(snapshot.search(condition)).extracting(MemberTeamDto::getAge).containsExactly(age);
+    }
+
+    @Test
+    public void bulkChangesReloadInBackground() throws InterruptedException {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        MemberSearchCondition condition = condition(null, null, null, null);
+
+        //청크마다 커밋하는 벌크 update. 커밋한 스레드는 전체 적재를 기다리지 않는다.
+        for (int i = 0; i < 5; i++) {
+            tx.executeWithoutResult(status -> queryFactory.update(member)
+                    .set(member.age, member.age.add(1))
+                    .where(member.username.startsWith("snapshot"))
+                    .execute());
+        }
+        awaitSnapshot();
+
+        assertThat(snapshot.search(condition)).isEqualTo(searchQueries.search(condition));
+    }
+
+    @Test
+    public void memoryUsage() {
+        snapshot.reload();
+
+        assertThat(snapshot.size()).isPositive();
+        assertThat(snapshot.memoryBytes()).isGreaterThanOrEqualTo(snapshot.size() * 20L);
+        assertThat(snapshot.bytesPerMillionRows()).isGreaterThan(0);
+    }
+
+    private void awaitSnapshot() throws InterruptedException {
+        for (int i = 0; i < 100 && !snapshot.canServe(); i++) {
+            Thread.sleep(50);
+        }
+        assertThat(snapshot.canServe()).isTrue();
+    }
+
+    private MemberSearchCondition partial(String usernamePrefix, String usernameContains, String teamName) {
+        MemberSearchCondition condition = condition(null, teamName, null, null);
+        condition.setUsernamePrefix(usernamePrefix);
+        condition.setUsernameContains(usernameContains);
+        return condition;
+    }
+
+    private MemberSearchCondition condition(String username, String teamName, Integer ageGoe, Integer ageLoe) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername(username);
+        condition.setTeamName(teamName);
+        condition.setAgeGoe(ageGoe);
+        condition.setAgeLoe(ageLoe);
+        return condition;
+    }
+}
@@ -0,0 +1,217 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.support.JdbcStatementCounter;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//새 컨텍스트가 스키마를 다시 만들면 시퀀스가 처음으로 돌아가 먼저 뜬 컨텍스트가 받은 id 와 겹친다.
+@SpringBootTest(properties = {"querydsl.member-team-view.enabled=true", "spring.jpa.hibernate.ddl-auto=update"})
+class MemberTeamViewRepositoryTest {
+
+    @Autowired
+    MemberTeamViewRepository viewRepository;
+
+    @Autowired
+    MemberSearchQueries searchQueries;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    MemberIngestRepository ingestRepository;
+
+    @Autowired
+    JdbcStatementCounter statementCounter;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    TransactionTemplate transaction;
+
+    @BeforeEach
+    void before() {
+        transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            Team teamA = new Team("viewA");
+            Team teamB = new Team("viewB");
+            em.persist(teamA);
+            em.persist(teamB);
+            for (int i = 0; i < 20; i++) {
+                em.persist(new Member("view" + i % 7, i * 5, i % 5 == 0 ? null : i % 2 == 0 ? teamA : teamB));
+            }
+        });
+    }
+
+    @AfterEach
+    void after() throws InterruptedException {
+        transaction.executeWithoutResult(status -> {
+            em.createQuery("delete from Member m where m.username like 'view%'").executeUpdate();
+            em.createQuery("delete from Team t where t.name like 'view%'").executeUpdate();
+        });
+        awaitRebuild();
+    }
+
+    @Test
+    public void sameResultsAsJoinQuery() {
+        assertSameResults();
+    }
+
+    @Test
+    public void changeTeamAndRenameTeam() {
+        transaction.executeWithoutResult(status -> {
+            Team teamA = em.createQuery("select t from Team t where t.name = 'viewA'", Team.class).getSingleResult();
+            Team teamB = em.createQuery("select t from Team t where t.name = 'viewB'", Team.class).getSingleResult();
+            List<Member> members = em.createQuery("select m from Member m where m.username = 'view3'", Member.class).getResultList();
+            members.forEach(member -> member.changeTeam(teamA));
+            teamB.setName("viewC");
+        });
+
+        assertThat(viewRepository.search(condition(null, "viewB"))).isEmpty();
+        assertThat(viewRepository.search(condition(null, "viewC"))).isNotEmpty();
+        assertThat(viewRepository.search(condition("view3", null)))
+                .extracting(MemberTeamDto::getTeamName).containsOnly("viewA");
+        assertSameResults();
+    }
+
+    @Test
+    public void removeMember() {
+        transaction.executeWithoutResult(status -> em.createQuery("select m from Member m where m.username = 'view3'", Member.class)
+                .getResultList()
+                .forEach(em::remove));
+
+        assertThat(viewRepository.search(condition("view3", null))).isEmpty();
+        assertSameResults();
+    }
+
+    @Test
+    public void rebuildAfterBulkUpdate() throws InterruptedException {
+        transaction.executeWithoutResult(status -> em.createQuery("update Member m set m.age = m.age + 1 where m.username like 'view%'")
+                .executeUpdate());
+
+        awaitRebuild();
+        assertSameResults();
+    }
+
+    @Test
+    public void rebuildConcurrentWithEntityWrites() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> writes = executor.submit(() -> {
+                for (int i = 0; i < 30; i++) {
+                    int age = i;
+                    transaction.executeWithoutResult(status -> {
+                        em.createQuery("select m from Member m where m.username = 'view3'", Member.class)
+                                .getResultList()
+                                .forEach(member -> member.setAge(age));
+                        em.persist(new Member("view" + age % 7, age));
+                    });
+                }
+            });
+            Future<?> rebuilds = executor.submit(() -> {
+                for (int i = 0; i < 10; i++) {
+                    viewRepository.rebuild();
+                }
+            });
+            writes.get(30, TimeUnit.SECONDS);
+            rebuilds.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertSameResults();
+    }
+
+    @Test
+    public void ingestWritesViewRowsInBatches() {
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            members.add(new Member("view" + i % 7, 100 + i));
+        }
+
+        long before = statementCounter.current();
+        ingestRepository.saveAll(members);
+        long statements = statementCounter.current() - before;
+
+        //회원 insert 3 + 시퀀스 + n-gram 색인 delete/insert + member_team_view delete/insert. 행마다 실행하면 240 이상이다.
+        assertThat(statements).isLessThan(12);
+        assertSameResults();
+    }
+
+    @Test
+    public void repositoryServesFromView() {
+        assertThat(viewRepository.canServe()).isTrue();
+
+        MemberSearchCondition condition = condition(null, "viewA");
+        assertThat(memberRepository.search(condition)).isEqualTo(searchQueries.search(condition));
+        assertThat(memberRepository.searchPageComplex(condition, PageRequest.of(0, 3)).getContent())
+                .isEqualTo(searchQueries.search(condition, 0L, 3));
+    }
+
+    private void assertSameResults() {
+        for (MemberSearchCondition condition : Arrays.asList(
+                condition(null, null),
+                condition(null, "viewA"),
+                condition(null, "viewB"),
+                condition(null, "viewC"),
+                condition("view3", null),
+                condition("view3", "viewB"),
+                condition("", ""),
+                partial("view1", null),
+                partial("view", "w3"),
+                partial(null, "iew"))) {
+            condition.setAgeLoe(200);
+
+            assertThat(viewRepository.search(condition)).isEqualTo(searchQueries.search(condition));
+
+            Page<MemberTeamDto> page = viewRepository.searchPage(condition, PageRequest.of(1, 3));
+            assertThat(page.getContent()).isEqualTo(searchQueries.search(condition, 3L, 3));
+            assertThat(page.getTotalElements()).isEqualTo(searchQueries.count(condition));
+        }
+    }
+
+    private void awaitRebuild() throws InterruptedException {
+        for (int i = 0; i < 100 && !viewRepository.canServe(); i++) {
+            Thread.sleep(50);
+        }
+        assertThat(viewRepository.canServe()).isTrue();
+    }
+
+    private MemberSearchCondition partial(String usernamePrefix, String usernameContains) {
+        MemberSearchCondition condition = condition(null, null);
+        condition.setUsernamePrefix(usernamePrefix);
+        condition.setUsernameContains(usernameContains);
+        return condition;
+    }
+
+    private MemberSearchCondition condition(String username, String teamName) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername(username);
+        condition.setTeamName(teamName);
+        return condition;
+    }
+}
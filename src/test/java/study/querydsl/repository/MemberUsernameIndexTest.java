@@ -0,0 +1,170 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class MemberUsernameIndexTest {
+
+    @Autowired
+    MemberUsernameIndex usernameIndex;
+
+    @Autowired
+    MemberSearchQueries searchQueries;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    TransactionTemplate transaction;
+
+    @BeforeEach
+    void before() throws InterruptedException {
+        transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            Team team = new Team("qgTeam");
+            em.persist(team);
+            for (String username : new String[]{"qgAlice", "qgAlicia", "qgBob", "qgMalice", "qg_50%"}) {
+                em.persist(new Member(username, 20, team));
+            }
+        });
+        awaitIndex();
+    }
+
+    @AfterEach
+    void after() {
+        transaction.executeWithoutResult(status -> {
+            em.createQuery("delete from Member m where m.username like 'qg%'").executeUpdate();
+            em.createQuery("delete from Team t where t.name = 'qgTeam'").executeUpdate();
+        });
+    }
+
+    @Test
+    public void grams() {
+        assertThat(MemberUsernameIndex.grams("abcab")).containsExactly("abc", "bca", "cab", "ab", "b");
+        assertThat(MemberUsernameIndex.queryGrams("aaaa")).containsExactly("aaa");
+        assertThat(MemberUsernameIndex.containsPattern("5_0%!")).isEqualTo("%5!_0!%!!%");
+    }
+
+    @Test
+    public void prefixAndContains() {
+        assertThat(usernames(condition("qgAli", null))).containsExactly("qgAlice", "qgAlicia");
+        assertThat(usernames(condition("qg", "lice"))).containsExactly("qgAlice", "qgMalice");
+        assertThat(usernames(condition("qg", "Alic"))).containsExactly("qgAlice", "qgAlicia");
+        //1~2글자는 gram 범위로 찾는다.
+        assertThat(usernames(condition("qg", "ob"))).containsExactly("qgBob");
+        assertThat(usernames(condition("qg", "a"))).containsExactly("qgAlicia", "qgMalice");
+        //와일드카드는 문자 그대로 비교한다.
+        assertThat(usernames(condition("qg", "_5"))).containsExactly("qg_50%");
+        assertThat(usernames(condition("qg", "0%"))).containsExactly("qg_50%");
+        assertThat(usernames(condition("qg", "lx"))).isEmpty();
+
+        MemberSearchCondition condition = condition("qg", "lic");
+        condition.setTeamName("qgTeam");
+        condition.setAgeGoe(20);
+        assertThat(searchQueries.count(condition)).isEqualTo(3);
+    }
+
+    @Test
+    public void gramsFollowEntityWrites() {
+        Long bobId = transaction.execute(status -> {
+            Member bob = em.createQuery("select m from Member m where m.username = 'qgBob'", Member.class).getSingleResult();
+            bob.setUsername("qgRobert");
+            return bob.getId();
+        });
+
+        assertThat(usernames(condition("qg", "Bob"))).isEmpty();
+        assertThat(usernames(condition("qg", "ober"))).containsExactly("qgRobert");
+        assertThat(jdbcTemplate.queryForList("select gram from member_username_gram where member_id = ?", String.class, bobId))
+                .containsExactlyInAnyOrderElementsOf(MemberUsernameIndex.grams("qgRobert"));
+
+        transaction.executeWithoutResult(status -> em.remove(em.find(Member.class, bobId)));
+
+        assertThat(usernames(condition("qg", "ober"))).isEmpty();
+        assertThat(jdbcTemplate.queryForObject("select count(*) from member_username_gram where member_id = ?", Long.class, bobId))
+                .isZero();
+    }
+
+    @Test
+    public void likeScanWhileRebuilding() {
+        //벌크 변경은 색인을 다시 만들 때까지 like 로 훑는다.
+        transaction.executeWithoutResult(status -> em.createQuery("update Member m set m.username = 'qgCarol' where m.username = 'qgBob'")
+                .executeUpdate());
+
+        assertThat(usernames(condition("qg", "aro"))).containsExactly("qgCarol");
+    }
+
+    @Test
+    public void rebuildConcurrentWithEntityWrites() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> writes = executor.submit(() -> {
+                for (int i = 0; i < 30; i++) {
+                    String username = "qgRace" + i;
+                    transaction.executeWithoutResult(status -> {
+                        em.createQuery("select m from Member m where m.username like 'qgRace%' or m.username = 'qgBob'", Member.class)
+                                .getResultList()
+                                .forEach(member -> member.setUsername(username));
+                        em.persist(new Member(username + "x", 20));
+                    });
+                }
+            });
+            Future<?> rebuilds = executor.submit(() -> {
+                for (int i = 0; i < 10; i++) {
+                    usernameIndex.rebuild();
+                }
+            });
+            writes.get(30, TimeUnit.SECONDS);
+            rebuilds.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(jdbcTemplate.queryForObject("select count(*) from member_username_gram g"
+                + " left join member m on m.member_id = g.member_id"
+                + " where m.member_id is null or locate(g.gram, m.username) = 0", Long.class)).isZero();
+        assertThat(usernames(condition("qg", "ace29"))).containsOnly("qgRace29", "qgRace29x");
+    }
+
+    private List<String> usernames(MemberSearchCondition condition) {
+        return searchQueries.search(condition).stream().map(MemberTeamDto::getUsername).collect(java.util.stream.Collectors.toList());
+    }
+
+    private void awaitIndex() throws InterruptedException {
+        for (int i = 0; i < 100 && !usernameIndex.canServe(); i++) {
+            Thread.sleep(50);
+        }
+        assertThat(usernameIndex.canServe()).isTrue();
+    }
+
+    private MemberSearchCondition condition(String prefix, String contains) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsernamePrefix(prefix);
+        condition.setUsernameContains(contains);
+        return condition;
+    }
+}
@@ -0,0 +1,67 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StringDictionaryTest {
+
+    @Test
+    public void addAndFind() {
+        StringDictionary dictionary = new StringDictionary();
+
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(dictionary.add("member" + i)).isEqualTo(i);
+        }
+        int nullCode = dictionary.add(null);
+        int koreanCode = dictionary.add("회원");
+
+        assertThat(dictionary.add("member42")).isEqualTo(42);
+        assertThat(dictionary.find("member9999")).isEqualTo(9999);
+        assertThat(dictionary.find("member10000")).isEqualTo(-1);
+        assertThat(dictionary.find(null)).isEqualTo(nullCode);
+        assertThat(dictionary.find("")).isEqualTo(-1);
+        assertThat(dictionary.get(nullCode)).isNull();
+        assertThat(dictionary.get(koreanCode)).isEqualTo("회원");
+        assertThat(dictionary.get(1234)).isEqualTo("member1234");
+    }
+
+    @Test
+    public void compactKeepsOnlyUsedValues() {
+        StringDictionary dictionary = new StringDictionary();
+        for (int i = 0; i < 1_000; i++) {
+            dictionary.add("member" + i);
+        }
+        int[] codes = {dictionary.find("member7"), dictionary.add(null), dictionary.find("member500"), dictionary.find("member7")};
+
+        StringDictionary compacted = dictionary.compact(codes, codes.length);
+
+        assertThat(compacted.size()).isEqualTo(3);
+        assertThat(compacted.get(codes[0])).isEqualTo("member7");
+        assertThat(compacted.get(codes[1])).isNull();
+        assertThat(compacted.get(codes[2])).isEqualTo("member500");
+        assertThat(codes[3]).isEqualTo(codes[0]);
+        assertThat(compacted.find("member8")).isEqualTo(-1);
+    }
+
+    @Test
+    public void matchesLikeStringMethods() {
+        StringDictionary dictionary = new StringDictionary();
+        String[] values = {"alice", "malice", "회원가입", "가입회원", "", "ali"};
+        for (String value : values) {
+            dictionary.add(value);
+        }
+        int nullCode = dictionary.add(null);
+
+        for (String[] condition : new String[][]{{"ali", null}, {null, "lic"}, {"m", "ice"}, {"회원", null}, {null, "입회"}, {null, null}}) {
+            boolean[] matches = dictionary.matches(condition[0], condition[1]);
+            for (int code = 0; code < values.length; code++) {
+                String value = values[code];
+                assertThat(matches[code]).as("%s %s %s", value, condition[0], condition[1])
+                        .isEqualTo((condition[0] == null || value.startsWith(condition[0]))
+                                && (condition[1] == null || value.contains(condition[1])));
+            }
+            assertThat(matches[nullCode]).isFalse();
+        }
+    }
+}
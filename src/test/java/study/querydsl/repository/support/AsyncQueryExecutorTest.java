@@ -0,0 +1,95 @@
+package study.querydsl.repository.support;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AsyncQueryExecutorTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    //스레드 1개, 큐 1개
+    AsyncQueryExecutor executor = new AsyncQueryExecutor(meterRegistry, 1, 1, 1000);
+
+    CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void after() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    public void queryRunsOnExecutorThread() throws Exception {
+        Thread caller = Thread.currentThread();
+
+        Thread worker = executor.supply(Thread::currentThread).get(1, TimeUnit.SECONDS);
+
+        assertThat(worker).isNotEqualTo(caller);
+        assertThat(worker.getName()).startsWith("async-query-");
+    }
+
+    @Test
+    public void rejectWhenQueueIsFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        executor.supply(() -> {
+            started.countDown();
+            await(release);
+            return "running";
+        });
+        started.await(1, TimeUnit.SECONDS);
+        executor.supply(() -> "queued");
+
+        CompletableFuture<String> rejected = executor.supply(() -> "rejected");
+
+        assertThat(meterRegistry.get("repository.async.queue").gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.get("repository.async.rejected").counter().count()).isEqualTo(1);
+        assertThatThrownBy(rejected::get)
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(ResponseStatusException.class)
+                .satisfies(e -> assertThat(((ResponseStatusException) e.getCause()).getStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+    }
+
+    @Test
+    public void cancelledQueryIsNotExecuted() throws Exception {
+        CompletableFuture<String> running = executor.supply(() -> {
+            await(release);
+            return "running";
+        });
+        AtomicBoolean executed = new AtomicBoolean();
+        CompletableFuture<String> queued = executor.supply(() -> {
+            executed.set(true);
+            return "queued";
+        });
+
+        queued.cancel(false);
+        release.countDown();
+        running.get(1, TimeUnit.SECONDS);
+        //취소된 작업이 큐에서 빠질 때까지
+        while (meterRegistry.get("repository.async.queue").gauge().value() > 0) {
+            Thread.sleep(10);
+        }
+        executor.supply(() -> "next").get(1, TimeUnit.SECONDS);
+
+        assertThat(executed).isFalse();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package study.querydsl.repository.support;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import study.querydsl.entity.Member;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.transaction.support.TransactionSynchronizationManager.clear;
+import static org.springframework.transaction.support.TransactionSynchronizationManager.initSynchronization;
+import static org.springframework.transaction.support.TransactionSynchronizationManager.setActualTransactionActive;
+import static org.springframework.transaction.support.TransactionSynchronizationManager.setCurrentTransactionReadOnly;
+
+class CountCacheTest {
+
+    CountCache cache = new CountCache(new SimpleMeterRegistry(), 60, 100);
+
+    AtomicInteger counts = new AtomicInteger();
+
+    @AfterEach
+    void after() {
+        clear();
+    }
+
+    @Test
+    public void cachePerKey() {
+        cache.get("teamA", this::count);
+        cache.get("teamA", this::count);
+        cache.get("teamB", this::count);
+
+        assertThat(counts.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void bypassInWriteTransaction() {
+        beginTransaction(false);
+        cache.get("teamA", this::count);
+        cache.get("teamA", this::count);
+        assertThat(counts.get()).isEqualTo(2);
+        clear();
+
+        //쓰기 트랜잭션에서 센 값은 남지 않는다.
+        cache.get("teamA", this::count);
+        assertThat(counts.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void cacheInReadOnlyTransaction() {
+        beginTransaction(true);
+        cache.get("teamA", this::count);
+        cache.get("teamA", this::count);
+
+        assertThat(counts.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void invalidateAfterCommit() {
+        cache.get("teamA", this::count);
+
+        //flush 시점 이벤트는 커밋 전이므로 비우지 않는다.
+        beginTransaction(false);
+        cache.invalidate(new MemberTeamChangedEvent(Member.class, new Object()));
+        clear();
+        cache.get("teamA", this::count);
+        assertThat(counts.get()).isEqualTo(1);
+
+        cache.invalidate(new MemberTeamChangedEvent(Member.class, null, true));
+        cache.get("teamA", this::count);
+        assertThat(counts.get()).isEqualTo(2);
+
+        //트랜잭션 밖의 변경(JDBC 적재)은 바로 비운다.
+        cache.invalidate(new MemberTeamChangedEvent(Member.class, null));
+        cache.get("teamA", this::count);
+        assertThat(counts.get()).isEqualTo(3);
+    }
+
+    private void beginTransaction(boolean readOnly) {
+        initSynchronization();
+        setActualTransactionActive(true);
+        setCurrentTransactionReadOnly(readOnly);
+    }
+
+    private long count() {
+        return counts.incrementAndGet();
+    }
+}
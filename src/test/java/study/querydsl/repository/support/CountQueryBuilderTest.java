@@ -0,0 +1,105 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+@SpringBootTest
+@Transactional
+class CountQueryBuilderTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @BeforeEach
+    void before() {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30, teamB));
+        em.persist(new Member("member4", 40, null));
+    }
+
+    @Test
+    public void pruneUnusedLeftJoin() {
+        JPAQuery<MemberTeamDto> contentQuery = contentQuery()
+                .where(member.age.goe(20))
+                .orderBy(member.username.desc());
+
+        JPAQuery<Long> countQuery = CountQueryBuilder.from(em, contentQuery);
+
+        assertThat(countQuery.toString()).doesNotContain("team").doesNotContain("order by");
+        assertThat(countQuery.fetchOne()).isEqualTo(contentQuery.fetchCount());
+    }
+
+    @Test
+    public void keepJoinUsedByPredicate() {
+        JPAQuery<MemberTeamDto> contentQuery = contentQuery()
+                .where(team.name.eq("teamA"));
+
+        JPAQuery<Long> countQuery = CountQueryBuilder.from(em, contentQuery);
+
+        assertThat(countQuery.toString()).contains("left join member1.team as team");
+        assertThat(countQuery.fetchOne()).isEqualTo(contentQuery.fetchCount());
+    }
+
+    @Test
+    public void keepEntityJoin() {
+        //팀 이름과 회원 이름이 같지 않은 모든 팀과 join 하므로 행이 늘어난다.
+        JPAQuery<Member> contentQuery = queryFactory
+                .selectFrom(member)
+                .leftJoin(team).on(team.name.ne(member.username));
+
+        JPAQuery<Long> countQuery = CountQueryBuilder.from(em, contentQuery);
+
+        assertThat(countQuery.toString()).contains("left join Team team");
+        assertThat(countQuery.fetchOne()).isEqualTo(contentQuery.fetch().size());
+    }
+
+    @Test
+    public void countDistinctProjection() {
+        JPAQuery<String> contentQuery = queryFactory
+                .select(team.name)
+                .distinct()
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(team.name.startsWith("team"));
+
+        JPAQuery<Long> countQuery = CountQueryBuilder.from(em, contentQuery);
+
+        assertThat(countQuery.fetchOne()).isEqualTo(contentQuery.fetch().size());
+    }
+
+    private JPAQuery<MemberTeamDto> contentQuery() {
+        return queryFactory
+                .select(new QMemberTeamDto(
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")))
+                .from(member)
+                .leftJoin(member.team, team);
+    }
+}
@@ -0,0 +1,24 @@
+package study.querydsl.repository.support;
+
+import org.junit.jupiter.api.Test;
+import study.querydsl.entity.Member;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DataVersionTest {
+
+    @Test
+    public void etagChangesWithVersionAndBoot() {
+        DataVersion version = new DataVersion();
+        String etag = version.etag("v1", "teamA");
+
+        assertThat(version.etag("v1", "teamA")).isEqualTo(etag);
+        assertThat(version.etag("v1", "teamB")).isNotEqualTo(etag);
+
+        //재시작하면 카운터가 같아도 ETag 가 다르다.
+        assertThat(new DataVersion().etag("v1", "teamA")).isNotEqualTo(etag);
+
+        version.increment(new MemberTeamChangedEvent(Member.class, null, true));
+        assertThat(version.etag("v1", "teamA")).isNotEqualTo(etag);
+    }
+}
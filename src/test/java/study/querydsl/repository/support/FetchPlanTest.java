@@ -0,0 +1,122 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.hibernate.Hibernate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberTestRepository;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+@SpringBootTest
+@Transactional
+class FetchPlanTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    LazyLoadGuard lazyLoadGuard;
+
+    @Autowired
+    MemberTestRepository memberTestRepository;
+
+    @BeforeEach
+    void before() {
+        for (int i = 0; i < 5; i++) {
+            Team t = new Team("fetchPlanTeam" + i);
+            em.persist(t);
+            em.persist(new Member("fetchPlanMember" + i, 10, t));
+            em.persist(new Member("fetchPlanMember" + i, 20, t));
+        }
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    public void withoutPlanLazyLoadsEveryTeam() {
+        List<Member> members = queryFactory.selectFrom(member)
+                .where(member.username.startsWith("fetchPlanMember"))
+                .fetch();
+
+        try (LazyLoadGuard.Scope scope = lazyLoadGuard.open()) {
+            members.forEach(m -> m.getTeam().getName());
+            assertThat(scope.getLazyLoads()).isEqualTo(5);
+        }
+    }
+
+    @Test
+    public void joinPlan() {
+        List<Member> members = FetchPlan.join(member.team, team)
+                .applyTo(queryFactory.selectFrom(member))
+                .where(member.username.startsWith("fetchPlanMember"),
+                        team.name.startsWith("fetchPlanTeam"))
+                .fetch();
+
+        assertThat(members).hasSize(10);
+        try (LazyLoadGuard.Scope scope = lazyLoadGuard.open()) {
+            members.forEach(m -> m.getTeam().getName());
+            assertThat(scope.getLazyLoads()).isZero();
+        }
+    }
+
+    @Test
+    public void batchToOne() {
+        List<Member> members = FetchPlan.batch(member.team)
+                .fetch(em, queryFactory.selectFrom(member).where(member.username.startsWith("fetchPlanMember")));
+
+        assertThat(members).allMatch(m -> Hibernate.isInitialized(m.getTeam()));
+        try (LazyLoadGuard.Scope scope = lazyLoadGuard.open()) {
+            members.forEach(m -> m.getTeam().getName());
+            assertThat(scope.getLazyLoads()).isZero();
+        }
+    }
+
+    @Test
+    public void batchCollection() {
+        List<Team> teams = FetchPlan.batch(team.members)
+                .fetch(em, queryFactory.selectFrom(team).where(team.name.startsWith("fetchPlanTeam")));
+
+        assertThat(teams).hasSize(5);
+        try (LazyLoadGuard.Scope scope = lazyLoadGuard.open()) {
+            assertThat(teams).allMatch(t -> t.getMembers().size() == 2);
+            assertThat(scope.getLazyLoads()).isZero();
+        }
+    }
+
+    @Test
+    public void pagedJoinPlan() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("fetchPlanTeam3");
+
+        Page<Member> page = memberTestRepository.applyPagination2(condition, PageRequest.of(0, 1));
+
+        assertThat(page.getTotalElements()).isEqualTo(2);
+        try (LazyLoadGuard.Scope scope = lazyLoadGuard.open()) {
+            assertThat(page.getContent()).extracting(m -> m.getTeam().getName()).containsExactly("fetchPlanTeam3");
+            assertThat(scope.getLazyLoads()).isZero();
+        }
+    }
+
+    @Test
+    public void collectionJoinIsNotPageable() {
+        assertThat(FetchPlan.join(member.team, team).isPageable()).isTrue();
+        assertThat(FetchPlan.join(team.members, member).isPageable()).isFalse();
+    }
+}
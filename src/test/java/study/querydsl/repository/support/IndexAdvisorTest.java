@@ -0,0 +1,84 @@
+package study.querydsl.repository.support;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberRepository;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Transactional
+class IndexAdvisorTest {
+
+    @Autowired
+    IndexAdvisor indexAdvisor;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    EntityManager em;
+
+    @BeforeEach
+    void before() {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        for (int i = 0; i < 100; i++) {
+            em.persist(new Member("member" + i, i, i % 2 == 0 ? teamA : teamB));
+        }
+        em.flush();
+    }
+
+    @Test
+    public void teamAndAgeSearchUsesIndexes() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+        condition.setAgeGoe(10);
+        condition.setAgeLoe(30);
+
+        List<IndexAdvisor.Report> reports = indexAdvisor.explain("search", () -> memberRepository.search(condition));
+
+        //팀 이름 -> id 조회, 회원 조회
+        assertThat(reports).hasSize(2);
+        for (IndexAdvisor.Report report : reports) {
+            assertThat(report.hasScan()).as(report.getSql() + "\n" + report.getPlan()).isFalse();
+        }
+        assertThat(reports.get(0).getIndexes()).contains("IDX_TEAM_NAME");
+        assertThat(reports.get(1).getIndexes()).as(reports.get(1).getPlan()).contains("IDX_MEMBER_TEAM_AGE_USERNAME");
+    }
+
+    @Test
+    public void usernameSearchUsesIndex() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("member7");
+
+        List<IndexAdvisor.Report> reports = indexAdvisor.explain("search", () -> memberJpaRepository.search(condition));
+
+        assertThat(reports).hasSize(1);
+        assertThat(reports.get(0).hasScan()).as(reports.get(0).getSql() + "\n" + reports.get(0).getPlan()).isFalse();
+        assertThat(reports.get(0).getIndexes()).contains("IDX_MEMBER_USERNAME");
+    }
+
+    @Test
+    public void searchWithoutConditionIsScan() {
+        List<IndexAdvisor.Report> reports = indexAdvisor.explain("search", () -> memberRepository.search(new MemberSearchCondition()));
+
+        assertThat(reports).hasSize(1);
+        assertThat(reports.get(0).getScannedTables()).contains("MEMBER");
+    }
+}
@@ -0,0 +1,53 @@
+package study.querydsl.repository.support;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MemberSearchCacheTest {
+
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    MemberSearchCache cache = new MemberSearchCache(meterRegistry, 60, 100);
+
+    AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void cacheByNormalizedConditionAndPage() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+        MemberSearchCondition sameCondition = new MemberSearchCondition();
+        sameCondition.setTeamName("teamA");
+        sameCondition.setUsername("");
+
+        cache.get("search", condition, PageRequest.of(0, 10), this::load);
+        cache.get("search", sameCondition, PageRequest.of(0, 10), this::load);
+        cache.get("search", condition, PageRequest.of(1, 10), this::load);
+
+        assertThat(loads.get()).isEqualTo(2);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "memberSearch").tag("result", "hit")
+                .functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void invalidateOnChange() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+
+        cache.get("search", condition, this::load);
+        cache.invalidate(new MemberTeamChangedEvent(Member.class, null));
+        cache.get("search", condition, this::load);
+
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    private Integer load() {
+        return loads.incrementAndGet();
+    }
+}
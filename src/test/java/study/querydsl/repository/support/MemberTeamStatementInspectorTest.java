@@ -0,0 +1,104 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+@SpringBootTest
+@Transactional
+@RecordApplicationEvents
+class MemberTeamStatementInspectorTest {
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    ApplicationEvents events;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Test
+    public void bulkUpdateIsDetected() {
+        queryFactory.update(member)
+                .set(member.age, member.age.add(1))
+                .where(member.username.eq("nobody"))
+                .execute();
+
+        assertThat(events.stream(MemberTeamChangedEvent.class))
+                .extracting(MemberTeamChangedEvent::getEntityType)
+                .contains(Member.class);
+    }
+
+    @Test
+    public void bulkDeleteIsDetected() {
+        queryFactory.delete(team)
+                .where(team.name.eq("nobody"))
+                .execute();
+
+        assertThat(events.stream(MemberTeamChangedEvent.class))
+                .extracting(MemberTeamChangedEvent::getEntityType)
+                .contains(Team.class);
+    }
+
+    @Test
+    public void selectIsIgnored() {
+        queryFactory.selectFrom(member).fetch();
+
+        assertThat(events.stream(MemberTeamChangedEvent.class)).isEmpty();
+    }
+
+    @Test
+    public void entityWriteIsNotReportedAsBulk() {
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        em.persist(new Member("member1", 10, teamA));
+        em.flush();
+        teamA.setName("teamB");
+        em.flush();
+
+        assertThat(events.stream(MemberTeamChangedEvent.class))
+                .extracting(MemberTeamChangedEvent::getEntity)
+                .hasSize(3)
+                .doesNotContainNull();
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void completionEventPerChangedType() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            queryFactory.update(member)
+                    .set(member.age, member.age.add(1))
+                    .where(member.username.eq("nobody"))
+                    .execute();
+            queryFactory.update(team)
+                    .set(team.name, "nobody")
+                    .where(team.name.eq("nobody"))
+                    .execute();
+        });
+
+        //처음 바뀐 Member 뿐 아니라 Team 도 트랜잭션이 끝난 뒤 다시 발행한다.
+        assertThat(events.stream(MemberTeamChangedEvent.class)
+                .filter(MemberTeamChangedEvent::isTransactionCompleted))
+                .extracting(MemberTeamChangedEvent::getEntityType)
+                .containsExactly(Member.class, Team.class);
+    }
+}
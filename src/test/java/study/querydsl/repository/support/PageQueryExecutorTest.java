@@ -0,0 +1,146 @@
+package study.querydsl.repository.support;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PageQueryExecutorTest {
+
+    PageQueryExecutor executor = new PageQueryExecutor(new NoOpTransactionManager(), new SimpleMeterRegistry(), true, 2, 10, 10);
+
+    @AfterEach
+    void after() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void countRunsConcurrentlyWithContent() throws InterruptedException {
+        CountDownLatch countStarted = new CountDownLatch(1);
+        AtomicReference<Thread> countThread = new AtomicReference<>();
+
+        Page<String> page = executor.getPage(() -> {
+            //count 가 동시에 실행되지 않으면 여기서 기다리다 실패한다.
+            await(countStarted);
+            return Arrays.asList("a", "b");
+        }, PageRequest.of(0, 2), () -> {
+            countThread.set(Thread.currentThread());
+            countStarted.countDown();
+            return 10;
+        });
+
+        assertThat(page.getTotalElements()).isEqualTo(10);
+        assertThat(countThread.get()).isNotEqualTo(Thread.currentThread());
+    }
+
+    @Test
+    public void countNotUsedWhenPageIsNotFull() {
+        Page<String> page = executor.getPage(() -> Collections.singletonList("a"), PageRequest.of(0, 2), () -> 100);
+
+        assertThat(page.getTotalElements()).isEqualTo(1);
+    }
+
+    @Test
+    public void countFailurePropagates() {
+        assertThatThrownBy(() -> executor.getPage(() -> Arrays.asList("a", "b"), PageRequest.of(0, 2), () -> {
+            throw new IllegalStateException("count failed");
+        })).isInstanceOf(IllegalStateException.class).hasMessage("count failed");
+    }
+
+    @Test
+    public void sequentialWhenDisabled() {
+        PageQueryExecutor sequential = new PageQueryExecutor(new NoOpTransactionManager(), new SimpleMeterRegistry(), false, 1, 1, 10);
+        AtomicInteger counted = new AtomicInteger();
+
+        Page<String> page = sequential.getPage(() -> Arrays.asList("a", "b"), PageRequest.of(0, 2), () -> {
+            counted.incrementAndGet();
+            return 3;
+        });
+
+        assertThat(page.getTotalElements()).isEqualTo(3);
+        assertThat(counted.get()).isEqualTo(1);
+        sequential.shutdown();
+    }
+
+    @Test
+    public void sequentialWhenNoPermitLeft() throws Exception {
+        //커넥션 풀 2 -> 병렬 count 는 1개까지
+        PageQueryExecutor limited = new PageQueryExecutor(new NoOpTransactionManager(), new SimpleMeterRegistry(), true, 2, 10, 2);
+        CountDownLatch countStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread other = new Thread(() -> limited.getPage(() -> Arrays.asList("a", "b"), PageRequest.of(0, 2), () -> {
+            countStarted.countDown();
+            await(release);
+            return 10;
+        }));
+        other.start();
+        await(countStarted);
+
+        //허용 수를 다 썼으므로 기다리지 않고 호출 스레드에서 센다.
+        AtomicReference<Thread> countThread = new AtomicReference<>();
+        Page<String> page = limited.getPage(() -> Arrays.asList("a", "b"), PageRequest.of(0, 2), () -> {
+            countThread.set(Thread.currentThread());
+            return 3;
+        });
+
+        assertThat(page.getTotalElements()).isEqualTo(3);
+        assertThat(countThread.get()).isEqualTo(Thread.currentThread());
+        release.countDown();
+        other.join();
+        limited.shutdown();
+    }
+
+    @Test
+    public void sequentialWhenConnectionPoolTooSmall() {
+        PageQueryExecutor single = new PageQueryExecutor(new NoOpTransactionManager(), new SimpleMeterRegistry(), true, 2, 10, 1);
+        AtomicReference<Thread> countThread = new AtomicReference<>();
+
+        Page<String> page = single.getPage(() -> Arrays.asList("a", "b"), PageRequest.of(0, 2), () -> {
+            countThread.set(Thread.currentThread());
+            return 3;
+        });
+
+        assertThat(page.getTotalElements()).isEqualTo(3);
+        assertThat(countThread.get()).isEqualTo(Thread.currentThread());
+        single.shutdown();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static class NoOpTransactionManager implements PlatformTransactionManager {
+
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    }
+}
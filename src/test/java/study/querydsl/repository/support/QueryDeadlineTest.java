@@ -0,0 +1,159 @@
+package study.querydsl.repository.support;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class QueryDeadlineTest {
+
+    //행마다 5ms 씩 10초 걸리는 쿼리. H2 는 행 사이에서 취소를 확인한다.
+    static final String SLOW_QUERY = "select sleep_millis(5) from system_range(1, 2000)";
+
+    @Autowired
+    QueryDeadline queryDeadline;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    TransactionTemplate transaction;
+
+    @BeforeEach
+    void before() {
+        transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status ->
+                em.createNativeQuery("create alias if not exists sleep_millis for \"java.lang.Thread.sleep\"").executeUpdate());
+    }
+
+    @Test
+    public void slowQueryCancelledAtDeadline() {
+        double before = timeouts("slow", "deadline");
+        long start = System.nanoTime();
+
+        try (QueryDeadline.Budget ignored = queryDeadline.open("slow", 300)) {
+            assertThatThrownBy(() -> transaction.execute(status -> slowQuery().getResultList()))
+                    .satisfies(QueryDeadlineTest::cancelled);
+        }
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(3000);
+        assertThat(timeouts("slow", "deadline")).isEqualTo(before + 1);
+    }
+
+    @Test
+    public void expiredBudgetRejectsQuery() throws InterruptedException {
+        double before = timeouts("expired", "deadline");
+
+        try (QueryDeadline.Budget ignored = queryDeadline.open("expired", 10)) {
+            Thread.sleep(50);
+            assertThatThrownBy(() -> transaction.execute(status -> slowQuery().getResultList()))
+                    .isInstanceOf(org.springframework.dao.QueryTimeoutException.class);
+        }
+
+        assertThat(timeouts("expired", "deadline")).isEqualTo(before + 1);
+    }
+
+    @Test
+    public void cancelRunningQueryOnOtherThread() throws Exception {
+        double before = timeouts("disconnect", "disconnect");
+        QueryDeadline.Budget budget = queryDeadline.open("disconnect", 10_000);
+        budget.handOff();
+        budget.close();
+
+        CompletableFuture<Object> running = CompletableFuture.supplyAsync(() ->
+                budget.call(() -> transaction.execute(status -> slowQuery().getResultList())));
+        Thread.sleep(300);
+        budget.cancel("disconnect");
+
+        assertThatThrownBy(() -> running.get(3, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .satisfies(e -> cancelled(e.getCause()));
+        budget.finish();
+        assertThat(timeouts("disconnect", "disconnect")).isEqualTo(before + 1);
+    }
+
+    @Test
+    public void parallelCountRunsUnderCallerBudget() {
+        PageQueryExecutor pageQueryExecutor = new PageQueryExecutor(transactionManager, meterRegistry, true, 2, 10, 10);
+        AtomicReference<Thread> countThread = new AtomicReference<>();
+        AtomicReference<QueryDeadline.Budget> countBudget = new AtomicReference<>();
+        long start = System.nanoTime();
+
+        try (QueryDeadline.Budget budget = queryDeadline.open("parallelCount", 10_000)) {
+            CompletableFuture.runAsync(() -> {
+                sleep(300);
+                budget.cancel("disconnect");
+            });
+
+            //count 스레드의 Session 이 예산에 등록되어야 취소된다. (등록되지 않으면 10초 동안 실행된다)
+            assertThatThrownBy(() -> pageQueryExecutor.getPage(() -> Arrays.asList(1, 2), PageRequest.of(0, 2), () -> {
+                countThread.set(Thread.currentThread());
+                countBudget.set(QueryDeadline.current());
+                return slowQuery().getResultList().size();
+            })).satisfies(QueryDeadlineTest::cancelled);
+
+            assertThat(countThread.get()).isNotEqualTo(Thread.currentThread());
+            assertThat(countBudget.get()).isSameAs(budget);
+        } finally {
+            pageQueryExecutor.shutdown();
+        }
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(3000);
+    }
+
+    @Test
+    public void noBudgetNoTimeout() {
+        assertThat(QueryDeadline.current()).isNull();
+        transaction.executeWithoutResult(status -> {
+            Query query = em.createNativeQuery("select 1");
+            queryDeadline.apply(query);
+            assertThat(query.getHints()).doesNotContainKey(org.hibernate.annotations.QueryHints.TIMEOUT_HIBERNATE);
+        });
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Query slowQuery() {
+        Query query = em.createNativeQuery(SLOW_QUERY);
+        queryDeadline.apply(query);
+        return query;
+    }
+
+    //Hikari 가 timeout 난 커넥션을 닫아 rollback 이 실패하면 원래 예외는 TransactionSystemException 안에 있다.
+    private static void cancelled(Throwable e) {
+        Throwable cause = e instanceof TransactionSystemException ? ((TransactionSystemException) e).getApplicationException() : e;
+        assertThat(cause).isInstanceOf(javax.persistence.QueryTimeoutException.class);
+    }
+
+    private double timeouts(String budget, String reason) {
+        return meterRegistry.counter("repository.query.timeouts", "budget", budget, "reason", reason).count();
+    }
+}
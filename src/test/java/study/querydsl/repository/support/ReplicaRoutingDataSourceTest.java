@@ -0,0 +1,140 @@
+package study.querydsl.repository.support;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.repository.MemberRepository;
+
+import javax.persistence.EntityManager;
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * replica-0 은 primary 테이블을 LINKED TABLE 로 보는 두 번째 H2 DB, replica-1 은 접속할 수 없는 DB 다.
+ * replica_heartbeat 는 replica-0 에 따로 만들어 지연을 직접 정한다.
+ */
+@SpringBootTest(properties = {
+        "querydsl.replica.enabled=true",
+        "querydsl.replica.urls[0]=" + ReplicaRoutingDataSourceTest.REPLICA_URL,
+        "querydsl.replica.urls[1]=jdbc:h2:tcp://localhost:1/~/nothing",
+        "querydsl.replica.max-lag-millis=60000",
+        "querydsl.replica.heartbeat-millis=600000",
+        "spring.jpa.hibernate.ddl-auto=update"})
+class ReplicaRoutingDataSourceTest {
+
+    static final String REPLICA_URL = "jdbc:h2:mem:replica0;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    DataSource dataSource;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    ReplicaRoutingDataSource routing;
+    JdbcTemplate replica;
+
+    @BeforeEach
+    void before() throws SQLException {
+        routing = dataSource.unwrap(ReplicaRoutingDataSource.class);
+        replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+        for (String table : new String[]{"member", "team"}) {
+            replica.execute("create linked table if not exists " + table
+                    + "('org.h2.Driver', 'jdbc:h2:tcp://localhost/~/querydsl', 'sa', '', '" + table.toUpperCase() + "')");
+        }
+        replica.execute("create table if not exists replica_heartbeat (id int primary key, updated_at bigint not null)");
+        replicate();
+    }
+
+    @AfterEach
+    void after() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                em.createQuery("delete from Member m where m.username = 'replicaMember'").executeUpdate());
+    }
+
+    @Test
+    public void readOnlyTransactionGoesToReplica() {
+        assertThat(routing.availableReplicas()).containsExactly("replica-0");
+
+        assertThat(database(true)).isEqualTo("REPLICA0");
+        assertThat(database(false)).isEqualTo("QUERYDSL");
+        assertThat(jdbcTemplate.queryForObject("select database()", String.class)).isEqualTo("QUERYDSL");
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> em.persist(new Member("replicaMember", 10)));
+        replicate();
+        double before = replicaRoutes();
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("replicaMember");
+        assertThat(memberRepository.search(condition)).extracting(MemberTeamDto::getUsername).containsExactly("replicaMember");
+        assertThat(replicaRoutes()).isGreaterThan(before);
+    }
+
+    @Test
+    public void readAfterWriteGoesToPrimaryUntilReplicated() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> em.persist(new Member("replicaMember", 10)));
+
+        //쓰기 뒤의 heartbeat 가 복제본에 보이기 전에는 primary 로 읽는다.
+        assertThat(routing.availableReplicas()).isEmpty();
+        assertThat(database(true)).isEqualTo("QUERYDSL");
+
+        replicate();
+        assertThat(database(true)).isEqualTo("REPLICA0");
+    }
+
+    @Test
+    public void laggingReplicaFallsBackToPrimary() {
+        replica.update("update replica_heartbeat set updated_at = ? where id = 1", System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(10));
+        routing.checkReplicas();
+
+        assertThat(routing.availableReplicas()).isEmpty();
+        assertThat(database(true)).isEqualTo("QUERYDSL");
+        assertThat(meterRegistry.get("datasource.replica.lag").tag("replica", "replica-0").gauge().value())
+                .isGreaterThanOrEqualTo(TimeUnit.MINUTES.toMillis(10));
+    }
+
+    @Test
+    public void unreachableReplicaIsExcluded() {
+        assertThat(routing.availableReplicas()).doesNotContain("replica-1");
+        assertThat(meterRegistry.get("datasource.replica.failures").tag("replica", "replica-1").counter().count()).isPositive();
+    }
+
+    //복제본이 지금까지의 primary 변경을 따라온 것으로 만든다. (마지막 쓰기와 같은 ms 가 되지 않도록 1ms 뒤)
+    private void replicate() {
+        replica.update("merge into replica_heartbeat key(id) values (1, ?)", System.currentTimeMillis() + 1);
+        routing.checkReplicas();
+    }
+
+    private String database(boolean readOnly) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(readOnly);
+        return transaction.execute(status -> jdbcTemplate.queryForObject("select database()", String.class));
+    }
+
+    private double replicaRoutes() {
+        return meterRegistry.get("datasource.route").tag("target", "replica").counter().count();
+    }
+}
@@ -0,0 +1,46 @@
+package study.querydsl.repository.support;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.repository.MemberRepository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Transactional
+class RepositoryMetricsAspectTest {
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    public void searchPageComplexIsMeasured() {
+        memberRepository.searchPageComplex(new MemberSearchCondition(), PageRequest.of(0, 3));
+
+        Timer calls = meterRegistry.find("repository.calls")
+                .tag("method", "MemberRepositoryImpl.searchPageComplex")
+                .tag("outcome", "success")
+                .timer();
+        assertThat(calls).isNotNull();
+        assertThat(calls.count()).isGreaterThanOrEqualTo(1);
+
+        DistributionSummary statements = meterRegistry.find("repository.statements")
+                .tag("method", "MemberRepositoryImpl.searchPageComplex")
+                .summary();
+        assertThat(statements).isNotNull();
+        assertThat(statements.totalAmount()).isGreaterThanOrEqualTo(1);
+
+        assertThat(meterRegistry.find("repository.page.queries").tag("part", "content").timer())
+                .isNotNull();
+    }
+}
@@ -0,0 +1,100 @@
+package study.querydsl.repository.support;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberTestRepository;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static study.querydsl.entity.QMember.member;
+
+@SpringBootTest
+@Transactional
+class SortPolicyTest {
+
+    SortPolicy policy = SortPolicy.tiebreaker("id", member.id)
+            .allow("username", member.username)
+            .allow("age", member.age);
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberTestRepository memberTestRepository;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void before() {
+        Team team = new Team("sortTeam");
+        em.persist(team);
+        for (int i = 0; i < 6; i++) {
+            em.persist(new Member("sortMember", i % 2 * 10, team));
+        }
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    public void tiebreakerFollowsPrimaryDirection() {
+        SortPolicy.Resolution resolution = policy.resolve(Sort.by(Sort.Order.desc("age")));
+
+        assertThat(resolution.getOrderBy()).containsExactly(member.age.desc(), member.id.desc());
+        assertThat(resolution.getUnindexed()).isEmpty();
+
+        assertThat(policy.resolve(Sort.unsorted()).getOrderBy()).containsExactly(member.id.asc());
+        assertThat(policy.resolve(Sort.by("id")).getOrderBy()).containsExactly(member.id.asc());
+        assertThat(policy.resolve(Sort.by("age", "id")).getUnindexed()).isEmpty();
+    }
+
+    @Test
+    public void unindexedOrdersAreReported() {
+        SortPolicy.Resolution resolution = policy.resolve(Sort.by("team.name", "age", "username"));
+
+        assertThat(resolution.getOrderBy()).containsExactly(member.age.asc(), member.id.asc());
+        assertThat(resolution.getUnindexed()).extracting(Sort.Order::getProperty).containsExactly("team.name", "username");
+    }
+
+    @Test
+    public void pageOrderedByKeyAndTiebreaker() {
+        List<MemberTeamDto> content = memberTestRepository.applyPagination1(condition(),
+                PageRequest.of(0, 6, Sort.by(Sort.Order.desc("age")))).getContent();
+
+        assertThat(content).extracting(MemberTeamDto::getAge).containsExactly(10, 10, 10, 0, 0, 0);
+        assertThat(content.subList(0, 3)).extracting(MemberTeamDto::getMemberId).isSortedAccordingTo((a, b) -> b.compareTo(a));
+    }
+
+    @Test
+    public void unindexedSortRejected() {
+        double before = rejected();
+
+        assertThatThrownBy(() -> memberTestRepository.applyPagination2(condition(), PageRequest.of(0, 6, Sort.by("team.name"))))
+                .hasCauseInstanceOf(IllegalArgumentException.class);
+        assertThat(rejected()).isEqualTo(before + 1);
+    }
+
+    private double rejected() {
+        return meterRegistry.counter("repository.sort.unindexed",
+                "repository", MemberTestRepository.class.getSimpleName(), "action", "rejected").count();
+    }
+
+    private MemberSearchCondition condition() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("sortMember");
+        return condition;
+    }
+}
@@ -0,0 +1,106 @@
+package study.querydsl.repository.support;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.TeamRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class TeamCacheTest {
+
+    @Autowired
+    TeamRepository teamRepository;
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    MemberTeamChangePublisher changePublisher;
+
+    @Autowired
+    JdbcStatementCounter statementCounter;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    Long teamId;
+
+    @BeforeEach
+    void before() {
+        teamId = new TransactionTemplate(transactionManager).execute(status -> {
+            Team team = new Team("cachedTeam");
+            em.persist(team);
+            return team.getId();
+        });
+    }
+
+    @AfterEach
+    void after() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                em.createQuery("delete from Team t where t.name = 'cachedTeam'").executeUpdate());
+    }
+
+    @Test
+    public void idByNameFromQueryCache() {
+        assertThat(teamRepository.findIdsByName("cachedTeam")).containsExactly(teamId);
+
+        long before = statementCounter.current();
+        assertThat(teamRepository.findIdsByName("cachedTeam")).containsExactly(teamId);
+        assertThat(statementCounter.current() - before).isZero();
+
+        assertThat(meterRegistry.get("hibernate.cache.region.hit.ratio").tag("region", Team.ID_BY_NAME_CACHE_REGION)
+                .gauge().value()).isGreaterThan(0);
+    }
+
+    @Test
+    public void entityFromSecondLevelCache() {
+        assertThat(findInNewEntityManager(teamId).getName()).isEqualTo("cachedTeam");
+
+        long before = statementCounter.current();
+        assertThat(findInNewEntityManager(teamId).getName()).isEqualTo("cachedTeam");
+        assertThat(statementCounter.current() - before).isZero();
+    }
+
+    @Test
+    public void evictOnJdbcWrite() {
+        teamRepository.findIdsByName("cachedTeam");
+
+        Long jdbcTeamId = jdbcTemplate.queryForObject("select max(team_id) + 1000 from team", Long.class);
+        jdbcTemplate.update("insert into team (team_id, name) values (?, ?)", jdbcTeamId, "cachedTeam");
+        changePublisher.publish(Team.class, null);
+
+        List<Long> ids = teamRepository.findIdsByName("cachedTeam");
+        assertThat(ids).containsExactly(teamId, jdbcTeamId);
+    }
+
+    private Team findInNewEntityManager(Long id) {
+        EntityManager other = emf.createEntityManager();
+        try {
+            return other.find(Team.class, id);
+        } finally {
+            other.close();
+        }
+    }
+}